@@ -0,0 +1,67 @@
+package benchmarks;
+
+import allocation.AllocationEngine;
+import allocation.AllocationMethod;
+import allocation.SeatAllocator;
+import model.District;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+
+    @Param({"BONUS_SEAT", "DHONDT", "SAINTE_LAGUE", "HARE"})
+    public String method;
+
+    @Param({"5", "30", "200"})
+    public int parties;
+
+    @Param({"10", "225"})
+    public int seats;
+
+    private SeatAllocator allocator;
+    private int[] votes;
+    private int[] seatsOut;
+    private int[] bonusOut;
+    private District district;
+
+    @Setup
+    public void setUp() {
+        allocator = AllocationMethod.valueOf(method).getAllocator();
+        district = Fixtures.district(parties, seats);
+        district.setAllocationMethod(method);
+        votes = Fixtures.votes(district);
+        seatsOut = new int[parties];
+        bonusOut = new int[parties];
+    }
+
+    @Benchmark
+    public int[] allocate() {
+        allocator.allocate(votes, parties, seats, seatsOut, bonusOut);
+        return seatsOut;
+    }
+
+    // Threshold, allocation and writing the results back onto the District/Party objects
+    @Benchmark
+    public void calculateResults(Blackhole bh) {
+        AllocationEngine.calculateResults(district);
+        bh.consume(district);
+    }
+}
@@ -0,0 +1,40 @@
+package benchmarks;
+
+import model.District;
+import model.Party;
+
+import java.util.Random;
+
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    // Deterministic vote counts with a few large parties and a long tail of small ones
+    static District district(int partyCount, int seats) {
+        Random random = new Random(42);
+        District district = new District();
+        district.setId(1);
+        district.setName("District 1");
+        district.setSeats(seats);
+        int totalVotes = 0;
+        for (int i = 0; i < partyCount; i++) {
+            Party party = new Party();
+            party.setId(i + 1);
+            party.setName("Party " + (i + 1));
+            party.setVotes(1_000 + random.nextInt(1_000_000 / (i + 1)));
+            totalVotes += party.getVotes();
+            district.addParty(party);
+        }
+        district.setTotalVotes(totalVotes + totalVotes / 20);
+        return district;
+    }
+
+    static int[] votes(District district) {
+        int[] votes = new int[district.getParties().size()];
+        for (int i = 0; i < votes.length; i++) {
+            votes[i] = district.getParties().get(i).getVotes();
+        }
+        return votes;
+    }
+}
@@ -0,0 +1,57 @@
+package benchmarks;
+
+import model.District;
+import model.Party;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import services.VoteParameters;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// The parameter handling of POST /api/votes, as in VoteServlet
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParameterParsingBenchmark {
+    private static final Set<String> IGNORED = new HashSet<>(Arrays.asList("districtId", "totalVotes"));
+
+    @Param({"10", "100", "1000"})
+    public int parties;
+
+    private District district;
+    private Map<String, String[]> parameters;
+
+    @Setup
+    public void setUp() {
+        district = Fixtures.district(parties, 10);
+        parameters = new LinkedHashMap<>();
+        parameters.put("districtId", new String[]{"1"});
+        parameters.put("totalVotes", new String[]{String.valueOf(district.getTotalVotes())});
+        for (Party party : district.getParties()) {
+            parameters.put(party.getName(), new String[]{String.valueOf(party.getVotes())});
+        }
+    }
+
+    @Benchmark
+    public District applyPartyVotes() {
+        VoteParameters.applyPartyVotes(parameters, district, IGNORED);
+        return district;
+    }
+}
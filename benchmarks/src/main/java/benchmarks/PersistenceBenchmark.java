@@ -0,0 +1,91 @@
+package benchmarks;
+
+import allocation.AllocationEngine;
+import database.DistrictRepository;
+import database.SchemaMigrator;
+import model.District;
+import model.Party;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+// The tally write path of POST /api/votes against an in-memory H2 database in MySQL mode, with the
+// schema built by the application's own migrations
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    @Param({"10", "100"})
+    public int parties;
+
+    private Connection conn;
+    private District district;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        conn = DriverManager.getConnection("jdbc:h2:mem:bench" + parties + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        SchemaMigrator.migrate(conn);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("INSERT INTO districts (id, name, seats) VALUES (1, 'District 1', 10)");
+        }
+        District fixture = Fixtures.district(parties, 10);
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO parties (id, district_id, name) VALUES (?, 1, ?)")) {
+            for (Party party : fixture.getParties()) {
+                stmt.setInt(1, party.getId());
+                stmt.setString(2, party.getName());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+
+        district = DistrictRepository.fetchDistrictById(conn, 1);
+        for (int i = 0; i < parties; i++) {
+            district.getParties().get(i).setVotes(fixture.getParties().get(i).getVotes());
+        }
+        district.setTotalVotes(fixture.getTotalVotes());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+        }
+        conn.close();
+    }
+
+    @Benchmark
+    public District fetchDistrict() throws SQLException {
+        return DistrictRepository.fetchDistrictById(conn, 1);
+    }
+
+    // Allocation plus the version-checked, batched transaction and the result snapshot; the district's
+    // version advances each call
+    @Benchmark
+    public District tallyWrite() throws Exception {
+        AllocationEngine.calculateResults(district);
+        DistrictRepository.updateDistrict(conn, district);
+        return district;
+    }
+}
@@ -0,0 +1,44 @@
+package benchmarks;
+
+import allocation.AllocationEngine;
+import com.google.gson.Gson;
+import model.District;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int parties;
+
+    private final Gson gson = new Gson();
+    private District district;
+
+    @Setup
+    public void setUp() {
+        district = Fixtures.district(parties, 10);
+        AllocationEngine.calculateResults(district);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return gson.toJson(district);
+    }
+}
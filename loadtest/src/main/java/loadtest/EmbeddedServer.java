@@ -0,0 +1,147 @@
+package loadtest;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+import services.VoteServlet;
+
+import javax.servlet.Filter;
+import javax.servlet.Servlet;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.annotation.WebListener;
+import javax.servlet.annotation.WebServlet;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+// The application on an embedded Tomcat backed by in-memory H2 in MySQL mode. Servlets, filters and
+// listeners are registered from their annotations, as the container would when scanning the war.
+final class EmbeddedServer {
+    private static final String PACKAGE = "services";
+
+    private final Tomcat tomcat = new Tomcat();
+    private final Path baseDir;
+
+    EmbeddedServer(int port) throws IOException {
+        baseDir = Files.createTempDirectory("voting-loadtest");
+        tomcat.setBaseDir(baseDir.toString());
+        tomcat.setPort(port);
+    }
+
+    // Settings already given as -D system properties win, so the same server can run against MySQL
+    static void configureDatabase() throws IOException {
+        setDefault("db.url", "jdbc:h2:mem:voting_loadtest;MODE=MySQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000");
+        setDefault("db.user", "sa");
+        setDefault("db.password", "sa");
+        setDefault("votes.async.journal",
+                Files.createTempDirectory("voting-loadtest-journal").resolve("tally.journal").toString());
+        setDefault("audit.dir", Files.createTempDirectory("voting-loadtest-audit").toString());
+    }
+
+    int start() throws LifecycleException, ReflectiveOperationException, IOException {
+        Context context = tomcat.addContext("", baseDir.toString());
+        for (Class<?> type : applicationClasses()) {
+            register(context, type);
+        }
+        tomcat.getConnector();
+        tomcat.start();
+        return tomcat.getConnector().getLocalPort();
+    }
+
+    void stop() throws LifecycleException {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+
+    private static void register(Context context, Class<?> type) throws ReflectiveOperationException {
+        WebServlet servlet = type.getAnnotation(WebServlet.class);
+        if (servlet != null) {
+            String name = servlet.name().isEmpty() ? type.getName() : servlet.name();
+            Wrapper wrapper = Tomcat.addServlet(context, name, (Servlet) type.getDeclaredConstructor().newInstance());
+            wrapper.setAsyncSupported(servlet.asyncSupported());
+            wrapper.setLoadOnStartup(servlet.loadOnStartup());
+            for (String pattern : patterns(servlet.value(), servlet.urlPatterns())) {
+                context.addServletMappingDecoded(pattern, name);
+            }
+        }
+
+        WebFilter filter = type.getAnnotation(WebFilter.class);
+        if (filter != null) {
+            String name = filter.filterName().isEmpty() ? type.getName() : filter.filterName();
+            FilterDef def = new FilterDef();
+            def.setFilterName(name);
+            def.setFilter((Filter) type.getDeclaredConstructor().newInstance());
+            def.setAsyncSupported(String.valueOf(filter.asyncSupported()));
+            context.addFilterDef(def);
+            FilterMap map = new FilterMap();
+            map.setFilterName(name);
+            for (String pattern : patterns(filter.value(), filter.urlPatterns())) {
+                map.addURLPatternDecoded(pattern);
+            }
+            context.addFilterMap(map);
+        }
+
+        if (type.isAnnotationPresent(WebListener.class)) {
+            context.addApplicationListener(type.getName());
+        }
+    }
+
+    private static String[] patterns(String[] value, String[] urlPatterns) {
+        return value.length > 0 ? value : urlPatterns;
+    }
+
+    // Classes of the services package, from the application jar or its classes directory
+    private static List<Class<?>> applicationClasses() throws IOException {
+        File source;
+        try {
+            source = new File(VoteServlet.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Cannot locate the application classes", e);
+        }
+
+        List<String> names = new ArrayList<>();
+        if (source.isDirectory()) {
+            try (Stream<Path> files = Files.list(source.toPath().resolve(PACKAGE))) {
+                files.forEach(file -> names.add(PACKAGE + "/" + file.getFileName()));
+            }
+        } else {
+            try (JarFile jar = new JarFile(source)) {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    names.add(entries.nextElement().getName());
+                }
+            }
+        }
+
+        List<Class<?>> classes = new ArrayList<>();
+        for (String name : names) {
+            if (name.startsWith(PACKAGE + "/") && name.endsWith(".class") && !name.contains("$")
+                    && name.indexOf('/', PACKAGE.length() + 1) < 0) {
+                try {
+                    classes.add(Class.forName(name.substring(0, name.length() - ".class".length()).replace('/', '.'),
+                            false, EmbeddedServer.class.getClassLoader()));
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Cannot load " + name, e);
+                }
+            }
+        }
+        return classes;
+    }
+
+    private static void setDefault(String name, String value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, value);
+        }
+    }
+}
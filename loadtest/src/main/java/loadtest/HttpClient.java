@@ -0,0 +1,65 @@
+package loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+// Blocking HTTP on the JDK's keep-alive connections. Bodies are always read to the end so the
+// connection goes back to the keep-alive cache; set -Dhttp.maxConnections to the concurrency.
+final class HttpClient {
+    static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private final String baseUrl;
+    private final int timeoutMillis;
+
+    HttpClient(String baseUrl, int timeoutMillis) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    Response send(String method, String path, String body, String contentType) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        conn.setRequestMethod(method);
+        conn.setConnectTimeout(timeoutMillis);
+        conn.setReadTimeout(timeoutMillis);
+        if (body != null) {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", contentType);
+            conn.setFixedLengthStreamingMode(bytes.length);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(bytes);
+            }
+        }
+        int status = conn.getResponseCode();
+        InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+        if (in == null) {
+            return new Response(status, "");
+        }
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return new Response(status, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    Response send(Workload.Request request) throws IOException {
+        return send(request.method, request.path, request.body, "application/x-www-form-urlencoded");
+    }
+}
@@ -0,0 +1,201 @@
+package loadtest;
+
+import com.google.gson.GsonBuilder;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Open-loop load generator: requests are scheduled at a fixed rate regardless of how fast responses come
+// back, and each is sent by the next free connection. Without --target it starts the application on an
+// embedded Tomcat over in-memory H2 first. Options are --name=value; see README.md.
+public final class LoadTest {
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("target", "");
+        DEFAULTS.put("port", "0");
+        DEFAULTS.put("districts", "50");
+        DEFAULTS.put("parties", "8");
+        DEFAULTS.put("seats", "10");
+        DEFAULTS.put("rate", "200");
+        DEFAULTS.put("duration", "30");
+        DEFAULTS.put("warmup", "5");
+        DEFAULTS.put("mix", "tally=20,get=80");
+        DEFAULTS.put("connections", "32");
+        DEFAULTS.put("maxBacklog", "10000");
+        DEFAULTS.put("timeoutMillis", "10000");
+        DEFAULTS.put("seed", "42");
+        DEFAULTS.put("report", "");
+        DEFAULTS.put("maxErrorRate", "");
+        DEFAULTS.put("maxP99Millis", "");
+    }
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int connections = Integer.parseInt(options.get("connections"));
+        // Read once by the JDK's keep-alive cache, so it must be set before the first request
+        System.setProperty("http.maxConnections", String.valueOf(connections));
+
+        EmbeddedServer server = null;
+        String target = options.get("target");
+        if (target.isEmpty()) {
+            EmbeddedServer.configureDatabase();
+            server = new EmbeddedServer(Integer.parseInt(options.get("port")));
+            target = "http://localhost:" + server.start();
+            System.out.println("Embedded server on " + target + " using " + System.getProperty("db.url"));
+        }
+
+        int exitCode;
+        try {
+            HttpClient client = new HttpClient(target, Integer.parseInt(options.get("timeoutMillis")));
+            Workload workload = new Workload(Integer.parseInt(options.get("districts")),
+                    Integer.parseInt(options.get("parties")), Integer.parseInt(options.get("seats")),
+                    Long.parseLong(options.get("seed")));
+            workload.setUp(client);
+            System.out.println("Created " + workload.getDistrictCount() + " districts with "
+                    + options.get("parties") + " parties each");
+
+            double rate = Double.parseDouble(options.get("rate"));
+            System.out.printf("%.0f req/s for %s s after %s s of warm-up, mix %s, %d connections%n",
+                    rate, options.get("duration"), options.get("warmup"), options.get("mix"), connections);
+            Results results = run(client, workload, mix(options.get("mix")), rate,
+                    Double.parseDouble(options.get("warmup")), Double.parseDouble(options.get("duration")),
+                    connections, Integer.parseInt(options.get("maxBacklog")));
+            results.print(System.out);
+
+            if (!options.get("report").isEmpty()) {
+                try (Writer out = Files.newBufferedWriter(Paths.get(options.get("report")), StandardCharsets.UTF_8)) {
+                    Map<String, Object> report = new LinkedHashMap<>();
+                    report.put("options", options);
+                    report.putAll(results.toMap());
+                    new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(report, out);
+                }
+            }
+            exitCode = check(options, results);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    private static Results run(HttpClient client, Workload workload, Workload.Operation[] mix, double rate,
+                               double warmupSeconds, double durationSeconds, int connections, int maxBacklog)
+            throws InterruptedException {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(connections, connections, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "load-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.prestartAllCoreThreads();
+
+        Results results = new Results();
+        double intervalNanos = 1e9 / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + (long) (warmupSeconds * 1e9);
+        long total = (long) ((warmupSeconds + durationSeconds) * rate);
+        for (long i = 0; i < total; i++) {
+            long scheduled = start + (long) (i * intervalNanos);
+            long wait;
+            while ((wait = scheduled - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean measured = scheduled >= measureFrom;
+            if (pool.getQueue().size() >= maxBacklog) {
+                if (measured) {
+                    results.dropped();
+                }
+                continue;
+            }
+            Workload.Request request = workload.next(mix[ThreadLocalRandom.current().nextInt(mix.length)]);
+            pool.execute(() -> {
+                long sent = System.nanoTime();
+                String outcome;
+                String error = null;
+                try {
+                    HttpClient.Response response = client.send(request);
+                    outcome = String.valueOf(response.status);
+                    if (response.status >= 400) {
+                        error = response.body;
+                    }
+                } catch (IOException e) {
+                    outcome = e.getClass().getSimpleName();
+                    error = String.valueOf(e.getMessage());
+                }
+                if (measured) {
+                    results.get(request.operation).record(scheduled, sent, System.nanoTime(), outcome, error);
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.HOURS);
+        results.setElapsedSeconds((System.nanoTime() - measureFrom) / 1e9);
+        return results;
+    }
+
+    // "tally=20,get=80" as a table with one slot per unit of weight, so picking an operation is one random index
+    private static Workload.Operation[] mix(String spec) {
+        List<Workload.Operation> table = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Mix entries look like tally=20, not " + part);
+            }
+            Workload.Operation operation = Workload.Operation.valueOf(pair[0].trim().toUpperCase());
+            int weight = Integer.parseInt(pair[1].trim());
+            for (int i = 0; i < weight; i++) {
+                table.add(operation);
+            }
+        }
+        if (table.isEmpty()) {
+            throw new IllegalArgumentException("Mix has no operations");
+        }
+        return table.toArray(new Workload.Operation[0]);
+    }
+
+    // Non-zero when a threshold given on the command line was exceeded, so a build can fail on it
+    private static int check(Map<String, String> options, Results results) {
+        int exitCode = 0;
+        if (!options.get("maxErrorRate").isEmpty() && results.errorRate() > Double.parseDouble(options.get("maxErrorRate"))) {
+            System.out.printf("FAILED: error rate %.4f above %s%n", results.errorRate(), options.get("maxErrorRate"));
+            exitCode = 2;
+        }
+        if (!options.get("maxP99Millis").isEmpty() && results.worstP99Millis() > Double.parseDouble(options.get("maxP99Millis"))) {
+            System.out.printf("FAILED: p99 latency %.2f ms above %s ms%n", results.worstP99Millis(), options.get("maxP99Millis"));
+            exitCode = 2;
+        }
+        return exitCode;
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0 || !DEFAULTS.containsKey(arg.substring(2, eq))) {
+                throw new IllegalArgumentException("Unknown option " + arg + "; expected --name=value with name one of "
+                        + DEFAULTS.keySet());
+            }
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,166 @@
+package loadtest;
+
+import metrics.LatencyHistogram;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-operation outcomes of the measured part of a run. Latency is taken from the request's scheduled
+// start, so time spent queued behind slow responses counts; service time starts when it was sent.
+final class Results {
+    static final class OperationStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram service = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+        // First response body or exception message seen for each failing outcome
+        final Map<String, String> errorSamples = new ConcurrentHashMap<>();
+
+        void record(long scheduled, long sent, long finished, String outcome, String error) {
+            latency.record(finished - scheduled);
+            service.record(finished - sent);
+            if (error != null) {
+                errors.increment();
+                errorSamples.putIfAbsent(outcome, error);
+            }
+            outcomes.computeIfAbsent(outcome, key -> new LongAdder()).increment();
+        }
+    }
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99", "p99.9"};
+
+    private final Map<Workload.Operation, OperationStats> byOperation = new EnumMap<>(Workload.Operation.class);
+    private final LongAdder dropped = new LongAdder();
+    private volatile double elapsedSeconds;
+
+    Results() {
+        for (Workload.Operation operation : Workload.Operation.values()) {
+            byOperation.put(operation, new OperationStats());
+        }
+    }
+
+    OperationStats get(Workload.Operation operation) {
+        return byOperation.get(operation);
+    }
+
+    // Requests never sent because the backlog was over its limit
+    void dropped() {
+        dropped.increment();
+    }
+
+    void setElapsedSeconds(double elapsedSeconds) {
+        this.elapsedSeconds = elapsedSeconds;
+    }
+
+    long totalRequests() {
+        long total = 0;
+        for (OperationStats stats : byOperation.values()) {
+            total += stats.latency.getCount();
+        }
+        return total;
+    }
+
+    long totalErrors() {
+        long total = dropped.sum();
+        for (OperationStats stats : byOperation.values()) {
+            total += stats.errors.sum();
+        }
+        return total;
+    }
+
+    double errorRate() {
+        long attempted = totalRequests() + dropped.sum();
+        return attempted == 0 ? 0 : (double) totalErrors() / attempted;
+    }
+
+    // Highest p99 latency of any operation that ran, in milliseconds
+    double worstP99Millis() {
+        double worst = 0;
+        for (OperationStats stats : byOperation.values()) {
+            worst = Math.max(worst, stats.latency.quantileSeconds(0.99) * 1000);
+        }
+        return worst;
+    }
+
+    void print(PrintStream out) {
+        out.printf("%-8s %9s %9s %8s %9s %9s %9s %9s %9s %11s%n",
+                "op", "requests", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "svc p99 ms");
+        for (Map.Entry<Workload.Operation, OperationStats> entry : byOperation.entrySet()) {
+            OperationStats stats = entry.getValue();
+            long count = stats.latency.getCount();
+            if (count == 0) {
+                continue;
+            }
+            out.printf("%-8s %9d %9.1f %8d %9.2f %9.2f %9.2f %9.2f %9.2f %11.2f%n",
+                    entry.getKey().label(), count, count / elapsedSeconds, stats.errors.sum(),
+                    millis(stats.latency, 0.5), millis(stats.latency, 0.9), millis(stats.latency, 0.99),
+                    millis(stats.latency, 0.999), stats.latency.getMaxSeconds() * 1000, millis(stats.service, 0.99));
+        }
+        out.printf("%-8s %9d %9.1f %8d%n", "all", totalRequests(), totalRequests() / elapsedSeconds, totalErrors());
+        out.printf("Error rate %.3f%%, %d dropped%n", errorRate() * 100, dropped.sum());
+        out.println("Outcomes: " + outcomes());
+        for (Map.Entry<Workload.Operation, OperationStats> entry : byOperation.entrySet()) {
+            entry.getValue().errorSamples.forEach((outcome, sample) ->
+                    out.println("  " + entry.getKey().label() + " " + outcome + ": " + sample));
+        }
+    }
+
+    Map<String, Object> toMap() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("elapsedSeconds", elapsedSeconds);
+        report.put("requests", totalRequests());
+        report.put("throughput", totalRequests() / elapsedSeconds);
+        report.put("errors", totalErrors());
+        report.put("errorRate", errorRate());
+        report.put("dropped", dropped.sum());
+        Map<String, Object> operations = new LinkedHashMap<>();
+        for (Map.Entry<Workload.Operation, OperationStats> entry : byOperation.entrySet()) {
+            OperationStats stats = entry.getValue();
+            if (stats.latency.getCount() == 0) {
+                continue;
+            }
+            Map<String, Object> operation = new LinkedHashMap<>();
+            operation.put("requests", stats.latency.getCount());
+            operation.put("throughput", stats.latency.getCount() / elapsedSeconds);
+            operation.put("errors", stats.errors.sum());
+            Map<String, Double> latency = new LinkedHashMap<>();
+            Map<String, Double> service = new LinkedHashMap<>();
+            for (int i = 0; i < QUANTILES.length; i++) {
+                latency.put(QUANTILE_NAMES[i], millis(stats.latency, QUANTILES[i]));
+                service.put(QUANTILE_NAMES[i], millis(stats.service, QUANTILES[i]));
+            }
+            latency.put("max", stats.latency.getMaxSeconds() * 1000);
+            operation.put("latencyMillis", latency);
+            operation.put("serviceMillis", service);
+            operation.put("outcomes", counts(stats.outcomes));
+            operation.put("errorSamples", new TreeMap<>(stats.errorSamples));
+            operations.put(entry.getKey().label(), operation);
+        }
+        report.put("operations", operations);
+        return report;
+    }
+
+    private Map<String, Long> outcomes() {
+        Map<String, Long> total = new TreeMap<>();
+        for (OperationStats stats : byOperation.values()) {
+            counts(stats.outcomes).forEach((outcome, count) -> total.merge(outcome, count, Long::sum));
+        }
+        return total;
+    }
+
+    private static Map<String, Long> counts(Map<String, LongAdder> outcomes) {
+        Map<String, Long> counts = new TreeMap<>();
+        outcomes.forEach((outcome, count) -> counts.put(outcome, count.sum()));
+        return counts;
+    }
+
+    private static double millis(LatencyHistogram histogram, double quantile) {
+        return histogram.quantileSeconds(quantile) * 1000;
+    }
+}
@@ -0,0 +1,176 @@
+package loadtest;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Synthetic election: districts with the same national parties, each party holding a fixed share of every
+// district's vote. Tallies resend a district's growing absolute counts, batches add one station's increments
+// and result reads pick a district at random.
+final class Workload {
+    enum Operation {
+        TALLY, ASYNC, BATCH, GET;
+
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    static final class Request {
+        final Operation operation;
+        final String method;
+        final String path;
+        final String body;
+
+        Request(Operation operation, String method, String path, String body) {
+            this.operation = operation;
+            this.method = method;
+            this.path = path;
+            this.body = body;
+        }
+    }
+
+    private static final Gson GSON = new Gson();
+    private static final int STATIONS_PER_DISTRICT = 50;
+
+    private final int districtCount;
+    private final int partyCount;
+    private final int seats;
+    private final long seed;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    private int[] districtIds;
+    private String[] partyNames;
+    private int[][] weights;
+    private AtomicInteger[] rounds;
+    private final AtomicLong batchSequence = new AtomicLong();
+
+    Workload(int districtCount, int partyCount, int seats, long seed) {
+        this.districtCount = districtCount;
+        this.partyCount = partyCount;
+        this.seats = seats;
+        this.seed = seed;
+    }
+
+    // Creates the districts through /api/district/bulk and their parties through /api/parties/bulk
+    void setUp(HttpClient client) throws IOException {
+        Random random = new Random(seed);
+        partyNames = new String[partyCount];
+        for (int p = 0; p < partyCount; p++) {
+            partyNames[p] = "Party " + (p + 1);
+        }
+
+        JsonArray districts = new JsonArray();
+        for (int d = 0; d < districtCount; d++) {
+            JsonObject district = new JsonObject();
+            district.addProperty("name", "Load " + runId + " #" + (d + 1));
+            district.addProperty("seats", seats);
+            districts.add(district);
+        }
+        JsonArray created = postArray(client, "/api/district/bulk", GSON.toJson(districts));
+
+        districtIds = new int[created.size()];
+        weights = new int[created.size()][partyCount];
+        rounds = new AtomicInteger[created.size()];
+        JsonArray parties = new JsonArray();
+        for (int d = 0; d < created.size(); d++) {
+            districtIds[d] = created.get(d).getAsJsonObject().get("id").getAsInt();
+            rounds[d] = new AtomicInteger();
+            for (int p = 0; p < partyCount; p++) {
+                // A few strong parties and a long tail, so thresholds and bonus seats come into play
+                weights[d][p] = 1 + random.nextInt(p < 3 ? 100 : 20);
+            }
+            JsonObject entry = new JsonObject();
+            entry.addProperty("districtId", districtIds[d]);
+            JsonArray names = new JsonArray();
+            for (String name : partyNames) {
+                names.add(name);
+            }
+            entry.add("parties", names);
+            parties.add(entry);
+        }
+        postArray(client, "/api/parties/bulk", GSON.toJson(parties));
+    }
+
+    int getDistrictCount() {
+        return districtIds.length;
+    }
+
+    Request next(Operation operation) {
+        int d = ThreadLocalRandom.current().nextInt(districtIds.length);
+        switch (operation) {
+            case TALLY:
+            case ASYNC:
+                return tally(operation, d);
+            case BATCH:
+                return batch(d);
+            default:
+                return new Request(operation, "GET", "/api/votes?districtId=" + districtIds[d], null);
+        }
+    }
+
+    // Absolute counts for the district's next round, about 5% of ballots invalid
+    private Request tally(Operation operation, int d) {
+        int round = rounds[d].incrementAndGet();
+        StringBuilder body = new StringBuilder();
+        int valid = 0;
+        for (int p = 0; p < partyCount; p++) {
+            int votes = weights[d][p] * round;
+            valid += votes;
+            param(body, partyNames[p], votes);
+        }
+        param(body, "districtId", districtIds[d]);
+        param(body, "totalVotes", valid + valid / 20);
+        if (operation == Operation.ASYNC) {
+            param(body, "async", "true");
+        }
+        return new Request(operation, "POST", "/api/votes", body.toString());
+    }
+
+    private Request batch(int d) {
+        long sequence = batchSequence.incrementAndGet();
+        StringBuilder body = new StringBuilder();
+        int valid = 0;
+        for (int p = 0; p < partyCount; p++) {
+            valid += weights[d][p];
+            param(body, partyNames[p], weights[d][p]);
+        }
+        param(body, "districtId", districtIds[d]);
+        param(body, "stationId", "station-" + (sequence % STATIONS_PER_DISTRICT));
+        param(body, "batchId", "load-" + runId + "-" + sequence);
+        param(body, "totalVotes", valid + valid / 20);
+        return new Request(Operation.BATCH, "POST", "/api/votes/batch", body.toString());
+    }
+
+    private static JsonArray postArray(HttpClient client, String path, String json) throws IOException {
+        HttpClient.Response response = client.send("POST", path, json, "application/json");
+        if (response.status != 200) {
+            throw new IOException("POST " + path + " answered " + response.status + ": " + response.body);
+        }
+        JsonElement parsed = GSON.fromJson(response.body, JsonElement.class);
+        if (parsed == null || !parsed.isJsonArray()) {
+            throw new IOException("POST " + path + " did not return a JSON array: " + response.body);
+        }
+        return parsed.getAsJsonArray();
+    }
+
+    private static void param(StringBuilder body, String name, Object value) {
+        if (body.length() > 0) {
+            body.append('&');
+        }
+        try {
+            body.append(URLEncoder.encode(name, "UTF-8")).append('=').append(URLEncoder.encode(String.valueOf(value), "UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
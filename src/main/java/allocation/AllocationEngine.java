@@ -0,0 +1,59 @@
+package allocation;
+
+import model.District;
+import model.Party;
+
+import java.util.List;
+
+public final class AllocationEngine {
+    // 6.25% threshold to disqualify 500 votes
+    public static final double DEFAULT_THRESHOLD = 0.0625;
+
+    private AllocationEngine() {
+    }
+
+    public static int threshold(int totalVotes, double thresholdShare) {
+        return (int) (totalVotes * thresholdShare);
+    }
+
+    // Applies the threshold and the district's allocation method, updating the district and its parties
+    public static void calculateResults(District district) {
+        int totalVotes = district.getTotalVotes();
+        List<Party> parties = district.getParties();
+        int partyCount = parties.size();
+        district.setValidVotes(0);
+        district.setDisqualifiedVotes(totalVotes);
+        district.setVoteThreshold(threshold(totalVotes, DEFAULT_THRESHOLD));
+
+        int[] votes = new int[partyCount];
+        int totalValidVotes = 0;
+        if (totalVotes > 0) {
+            // Use strict > comparison for qualification
+            for (int i = 0; i < partyCount; i++) {
+                int partyVotes = parties.get(i).getVotes();
+                if (partyVotes > district.getVoteThreshold()) {
+                    votes[i] = partyVotes;
+                    totalValidVotes += partyVotes;
+                }
+            }
+        }
+
+        int[] seats = new int[partyCount];
+        int[] bonus = new int[partyCount];
+        if (totalValidVotes > 0) {
+            district.setValidVotes(totalValidVotes);
+            district.setDisqualifiedVotes(totalVotes - totalValidVotes);
+            AllocationMethod.fromName(district.getAllocationMethod()).getAllocator()
+                    .allocate(votes, partyCount, district.getSeats(), seats, bonus);
+        }
+
+        for (int i = 0; i < partyCount; i++) {
+            Party party = parties.get(i);
+            party.setQualified(votes[i] > 0);
+            party.setFirstRoundSeats(seats[i]);
+            party.setSecondRoundSeats(0);
+            party.setBonusSeat(bonus[i]);
+            party.setTotalSeats(seats[i] + bonus[i]);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package allocation;
+
+public enum AllocationMethod {
+    BONUS_SEAT(new BonusSeatAllocator()),
+    DHONDT(new DHondtAllocator()),
+    SAINTE_LAGUE(new SainteLagueAllocator()),
+    HARE(new HareAllocator());
+
+    private final SeatAllocator allocator;
+
+    AllocationMethod(SeatAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    public SeatAllocator getAllocator() { return allocator; }
+
+    // Unknown or missing names fall back to the original bonus-seat rule
+    public static AllocationMethod fromName(String name) {
+        try {
+            return parse(name);
+        } catch (IllegalArgumentException e) {
+            return BONUS_SEAT;
+        }
+    }
+
+    public static AllocationMethod parse(String name) throws IllegalArgumentException {
+        if (name == null || name.trim().isEmpty()) {
+            return BONUS_SEAT;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase().replace('-', '_').replace("'", ""));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown allocation method " + name);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package allocation;
+
+// The original rule: one seat is reserved as a bonus for the leading party, the rest are shared by
+// rounding each party's vote share; rounding surplus goes to the leader, any excess is taken from the
+// weakest qualified party other than the leader.
+public class BonusSeatAllocator implements SeatAllocator {
+
+    @Override
+    public void allocate(int[] votes, int partyCount, int totalSeats, int[] seats, int[] bonus) {
+        long totalValidVotes = 0;
+        int leader = -1;
+        for (int i = 0; i < partyCount; i++) {
+            seats[i] = 0;
+            bonus[i] = 0;
+            if (votes[i] > 0) {
+                totalValidVotes += votes[i];
+                // Ties go to the earlier party
+                if (leader < 0 || votes[i] > votes[leader]) {
+                    leader = i;
+                }
+            }
+        }
+        if (leader < 0) {
+            return;
+        }
+
+        int seatsForProportional = totalSeats - 1; // Reserve 1 seat for bonus
+        int allocatedSeats = 0;
+        for (int i = 0; i < partyCount; i++) {
+            if (votes[i] > 0) {
+                seats[i] = (int) Math.round((double) votes[i] / totalValidVotes * seatsForProportional);
+                allocatedSeats += seats[i];
+            }
+        }
+
+        int remainingSeats = seatsForProportional - allocatedSeats;
+        if (remainingSeats > 0) {
+            seats[leader] += remainingSeats;
+            allocatedSeats += remainingSeats;
+        }
+        bonus[leader] = 1;
+
+        int excessSeats = allocatedSeats + 1 - totalSeats;
+        if (excessSeats > 0) {
+            int weakest = -1;
+            int lastQualified = leader;
+            for (int i = 0; i < partyCount; i++) {
+                if (votes[i] > 0) {
+                    lastQualified = i;
+                    if (i != leader && (weakest < 0 || votes[i] < votes[weakest])) {
+                        weakest = i;
+                    }
+                }
+            }
+            seats[weakest < 0 ? lastQualified : weakest] -= excessSeats;
+        }
+    }
+}
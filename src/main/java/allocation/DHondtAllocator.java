@@ -0,0 +1,9 @@
+package allocation;
+
+public class DHondtAllocator extends HighestAveragesAllocator {
+
+    @Override
+    protected long divisor(int seatsWon) {
+        return seatsWon + 1L;
+    }
+}
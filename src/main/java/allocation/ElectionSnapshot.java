@@ -0,0 +1,81 @@
+package allocation;
+
+import model.District;
+import model.Party;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Immutable copy of district results in flat primitive arrays for simulations. The parties of district d
+// occupy [partyStart[d], partyStart[d + 1]) of the party arrays; partyIndex maps each to its national party,
+// matched by name as in NationalAggregator. Evaluations only read these arrays, so one snapshot can be shared
+// by any number of threads.
+public final class ElectionSnapshot {
+    final int[] districtIds;
+    final int[] seats;
+    final int[] totalVotes;
+    final AllocationMethod[] methods;
+    final int[] partyStart;
+    final int[] partyVotes;
+    final int[] partyIndex;
+    final String[] partyNames;
+    final Map<String, Integer> partyIndexByName;
+    final int maxPartiesPerDistrict;
+
+    private ElectionSnapshot(List<District> districts) {
+        int districtCount = districts.size();
+        int partyCount = 0;
+        for (District district : districts) {
+            partyCount += district.getParties().size();
+        }
+        districtIds = new int[districtCount];
+        seats = new int[districtCount];
+        totalVotes = new int[districtCount];
+        methods = new AllocationMethod[districtCount];
+        partyStart = new int[districtCount + 1];
+        partyVotes = new int[partyCount];
+        partyIndex = new int[partyCount];
+
+        Map<String, Integer> indexByName = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int p = 0;
+        int maxParties = 0;
+        for (int d = 0; d < districtCount; d++) {
+            District district = districts.get(d);
+            districtIds[d] = district.getId();
+            seats[d] = district.getSeats();
+            totalVotes[d] = district.getTotalVotes();
+            methods[d] = AllocationMethod.fromName(district.getAllocationMethod());
+            partyStart[d] = p;
+            for (Party party : district.getParties()) {
+                partyVotes[p] = party.getVotes();
+                Integer index = indexByName.get(party.getName());
+                if (index == null) {
+                    index = names.size();
+                    indexByName.put(party.getName(), index);
+                    names.add(party.getName());
+                }
+                partyIndex[p++] = index;
+            }
+            maxParties = Math.max(maxParties, district.getParties().size());
+        }
+        partyStart[districtCount] = p;
+        partyNames = names.toArray(new String[0]);
+        partyIndexByName = indexByName;
+        maxPartiesPerDistrict = maxParties;
+    }
+
+    public static ElectionSnapshot of(List<District> districts) {
+        return new ElectionSnapshot(districts);
+    }
+
+    public int getDistrictCount() {
+        return districtIds.length;
+    }
+
+    public int getPartyCount() {
+        return partyNames.length;
+    }
+}
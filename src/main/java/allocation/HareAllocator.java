@@ -0,0 +1,51 @@
+package allocation;
+
+// Hare quota with largest remainders: each party first gets floor(votes * seats / valid votes), then the
+// leftover seats go to the largest remainders.
+public class HareAllocator implements SeatAllocator {
+
+    @Override
+    public void allocate(int[] votes, int partyCount, int totalSeats, int[] seats, int[] bonus) {
+        try (Scratch scratch = Scratch.get(partyCount)) {
+            int[] heap = scratch.heap;
+            long[] remainder = scratch.numerator;
+            long[] one = scratch.denominator;
+
+            long totalValidVotes = 0;
+            for (int i = 0; i < partyCount; i++) {
+                seats[i] = 0;
+                bonus[i] = 0;
+                if (votes[i] > 0) {
+                    totalValidVotes += votes[i];
+                }
+            }
+            if (totalValidVotes == 0 || totalSeats <= 0) {
+                return;
+            }
+
+            int allocated = 0;
+            int size = 0;
+            for (int i = 0; i < partyCount; i++) {
+                if (votes[i] > 0) {
+                    long scaled = (long) votes[i] * totalSeats;
+                    seats[i] = (int) (scaled / totalValidVotes);
+                    allocated += seats[i];
+                    remainder[i] = scaled % totalValidVotes;
+                    one[i] = 1;
+                    heap[size++] = i;
+                }
+            }
+
+            int leftover = totalSeats - allocated;
+            if (leftover > 0) {
+                IndexHeap.heapify(heap, size, remainder, one);
+                // Fewer leftover seats than parties, so each party gets at most one
+                for (int k = 0; k < leftover && size > 0; k++) {
+                    seats[heap[0]]++;
+                    heap[0] = heap[--size];
+                    IndexHeap.siftDown(heap, size, 0, remainder, one);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package allocation;
+
+// Divisor methods: each seat goes to the party with the highest votes / divisor(seats won so far).
+// A max-heap over party indices makes this O(seats * log parties) with no per-seat allocation.
+public abstract class HighestAveragesAllocator implements SeatAllocator {
+
+    protected abstract long divisor(int seatsWon);
+
+    @Override
+    public void allocate(int[] votes, int partyCount, int totalSeats, int[] seats, int[] bonus) {
+        try (Scratch scratch = Scratch.get(partyCount)) {
+            int[] heap = scratch.heap;
+            long[] numerator = scratch.numerator;
+            long[] denominator = scratch.denominator;
+
+            int size = 0;
+            for (int i = 0; i < partyCount; i++) {
+                seats[i] = 0;
+                bonus[i] = 0;
+                if (votes[i] > 0) {
+                    numerator[i] = votes[i];
+                    denominator[i] = divisor(0);
+                    heap[size++] = i;
+                }
+            }
+            if (size == 0) {
+                return;
+            }
+            IndexHeap.heapify(heap, size, numerator, denominator);
+
+            for (int seat = 0; seat < totalSeats; seat++) {
+                int winner = heap[0];
+                seats[winner]++;
+                denominator[winner] = divisor(seats[winner]);
+                IndexHeap.siftDown(heap, size, 0, numerator, denominator);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package allocation;
+
+// Binary max-heap of party indices ordered by numerator[i] / denominator[i], compared by cross-multiplying
+// so no floating point is involved. Equal priorities favour the lower index.
+final class IndexHeap {
+
+    private IndexHeap() {
+    }
+
+    static void heapify(int[] heap, int size, long[] numerator, long[] denominator) {
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(heap, size, i, numerator, denominator);
+        }
+    }
+
+    static void siftDown(int[] heap, int size, int pos, long[] numerator, long[] denominator) {
+        int item = heap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(heap[child + 1], heap[child], numerator, denominator)) {
+                child++;
+            }
+            if (!before(heap[child], item, numerator, denominator)) {
+                break;
+            }
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = item;
+    }
+
+    private static boolean before(int a, int b, long[] numerator, long[] denominator) {
+        long left = numerator[a] * denominator[b];
+        long right = numerator[b] * denominator[a];
+        return left > right || (left == right && a < b);
+    }
+}
@@ -0,0 +1,66 @@
+package allocation;
+
+import model.District;
+import model.NationalPartyResult;
+import model.NationalResult;
+import model.Party;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+public final class NationalAggregator {
+
+    private NationalAggregator() {
+    }
+
+    // Merges the per-party national totals in parallel on the given pool. Seats are the ones committed with
+    // each district, not recalculated here, so they match what the district and leaderboard endpoints report;
+    // votes added by batches since a district's last recompute are counted, but their seats are not yet.
+    // Parties are matched across districts by name.
+    public static NationalResult aggregate(List<District> districts, ForkJoinPool pool)
+            throws InterruptedException, ExecutionException {
+        Map<String, NationalPartyResult> totals = pool.submit(() -> districts.parallelStream()
+                .collect(HashMap<String, NationalPartyResult>::new,
+                        NationalAggregator::accumulate,
+                        NationalAggregator::combine))
+                .get();
+
+        NationalResult result = new NationalResult();
+        result.setDistrictCount(districts.size());
+        for (District district : districts) {
+            result.setSeats(result.getSeats() + district.getSeats());
+            result.setTotalVotes(result.getTotalVotes() + district.getTotalVotes());
+            result.setValidVotes(result.getValidVotes() + district.getValidVotes());
+        }
+        List<NationalPartyResult> parties = new ArrayList<>(totals.values());
+        parties.sort((a, b) -> a.getSeats() != b.getSeats()
+                ? Integer.compare(b.getSeats(), a.getSeats())
+                : Long.compare(b.getVotes(), a.getVotes()));
+        result.setParties(parties);
+        result.setDistricts(districts);
+        return result;
+    }
+
+    private static void accumulate(Map<String, NationalPartyResult> totals, District district) {
+        for (Party party : district.getParties()) {
+            NationalPartyResult total = totals.computeIfAbsent(party.getName(), NationalPartyResult::new);
+            total.setVotes(total.getVotes() + party.getVotes());
+            total.setSeats(total.getSeats() + party.getTotalSeats());
+            total.setBonusSeats(total.getBonusSeats() + party.getBonusSeat());
+            total.setDistricts(total.getDistricts() + 1);
+        }
+    }
+
+    private static void combine(Map<String, NationalPartyResult> into, Map<String, NationalPartyResult> from) {
+        for (Map.Entry<String, NationalPartyResult> entry : from.entrySet()) {
+            NationalPartyResult existing = into.putIfAbsent(entry.getKey(), entry.getValue());
+            if (existing != null) {
+                existing.add(entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package allocation;
+
+public class SainteLagueAllocator extends HighestAveragesAllocator {
+
+    @Override
+    protected long divisor(int seatsWon) {
+        return 2L * seatsWon + 1L;
+    }
+}
@@ -0,0 +1,51 @@
+package allocation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// A hypothetical change to evaluate against an ElectionSnapshot. Each shift moves a party's vote share by the
+// given number of percentage points in every district it contests, taking the votes from (or giving them to)
+// the district's other parties in proportion to their votes. Unset fields keep the snapshot's rules.
+public class Scenario {
+    private String name;
+    private Map<String, Double> shifts = new LinkedHashMap<>();
+    private Double thresholdPercent;
+    private String method;
+
+    public Scenario() {
+    }
+
+    public Scenario(String name) {
+        this.name = name;
+    }
+
+    // Getters and setters
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public Map<String, Double> getShifts() { return shifts; }
+    public void setShifts(Map<String, Double> shifts) { this.shifts = shifts; }
+
+    public Double getThresholdPercent() { return thresholdPercent; }
+    public void setThresholdPercent(Double thresholdPercent) { this.thresholdPercent = thresholdPercent; }
+
+    public String getMethod() { return method; }
+    public void setMethod(String method) { this.method = method; }
+
+    public void validate() throws IllegalArgumentException {
+        if (shifts != null) {
+            for (Map.Entry<String, Double> shift : shifts.entrySet()) {
+                Double points = shift.getValue();
+                if (points == null || points.isNaN() || points < -100 || points > 100) {
+                    throw new IllegalArgumentException("Shift for " + shift.getKey() + " must be between -100 and 100");
+                }
+            }
+        }
+        if (thresholdPercent != null && (thresholdPercent.isNaN() || thresholdPercent < 0 || thresholdPercent > 100)) {
+            throw new IllegalArgumentException("Threshold percent must be between 0 and 100");
+        }
+        if (method != null) {
+            AllocationMethod.parse(method);
+        }
+    }
+}
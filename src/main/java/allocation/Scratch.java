@@ -0,0 +1,38 @@
+package allocation;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Working arrays for the allocators, grown on demand and returned on close for later calls to reuse. Pooled in
+// a few slots picked by thread id instead of a ThreadLocal, which only reuses them on long-lived platform
+// threads; a virtual thread would allocate a new set on every call. Sets beyond the slots are dropped.
+final class Scratch implements AutoCloseable {
+    private static final AtomicReferenceArray<Scratch> POOL = new AtomicReferenceArray<>(
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1);
+
+    int[] heap;
+    long[] numerator;
+    long[] denominator;
+
+    private Scratch(int capacity) {
+        heap = new int[capacity];
+        numerator = new long[capacity];
+        denominator = new long[capacity];
+    }
+
+    static Scratch get(int partyCount) {
+        Scratch scratch = POOL.getAndSet(slot(), null);
+        if (scratch == null || scratch.heap.length < partyCount) {
+            scratch = new Scratch(Math.max(64, Integer.highestOneBit(partyCount) << 1));
+        }
+        return scratch;
+    }
+
+    @Override
+    public void close() {
+        POOL.compareAndSet(slot(), null, this);
+    }
+
+    private static int slot() {
+        return (int) Thread.currentThread().getId() & (POOL.length() - 1);
+    }
+}
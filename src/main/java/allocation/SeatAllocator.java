@@ -0,0 +1,8 @@
+package allocation;
+
+// Allocates a district's seats among parties. votes[i] is the vote count of party i, with 0 for parties
+// below the threshold; seats[i] receives the proportional seats and bonus[i] any bonus seat. The arrays
+// may be longer than partyCount, so callers can reuse buffers.
+public interface SeatAllocator {
+    void allocate(int[] votes, int partyCount, int totalSeats, int[] seats, int[] bonus);
+}
@@ -0,0 +1,177 @@
+package allocation;
+
+import model.ScenarioResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+// Evaluates what-if scenarios against an ElectionSnapshot without touching District objects or the database.
+// Each scenario runs on one thread through the same threshold and allocator steps as
+// AllocationEngine.calculateResults, on working arrays sized to the largest district and reused for every
+// district; scenarios run in parallel on the given pool.
+public final class Simulator {
+
+    private Simulator() {
+    }
+
+    // Seats held per party position and national totals per national party
+    private static final class Outcome {
+        final int[] districtSeats;
+        final long[] votes;
+        final int[] seats;
+
+        Outcome(ElectionSnapshot base) {
+            districtSeats = new int[base.partyVotes.length];
+            votes = new long[base.partyNames.length];
+            seats = new int[base.partyNames.length];
+        }
+    }
+
+    // Results come back in scenario order; an unknown party or method fails the whole batch up front
+    public static List<ScenarioResult> run(ElectionSnapshot base, List<Scenario> scenarios, ForkJoinPool pool)
+            throws InterruptedException, ExecutionException {
+        for (Scenario scenario : scenarios) {
+            scenario.validate();
+            if (scenario.getShifts() != null) {
+                for (String party : scenario.getShifts().keySet()) {
+                    if (!base.partyIndexByName.containsKey(party)) {
+                        throw new IllegalArgumentException("Party " + party + " does not contest any district");
+                    }
+                }
+            }
+        }
+        Outcome baseline = evaluate(base, new Scenario());
+        return pool.submit(() -> scenarios.parallelStream()
+                        .map(scenario -> compare(base, baseline, scenario, evaluate(base, scenario)))
+                        .collect(Collectors.toList()))
+                .get();
+    }
+
+    private static Outcome evaluate(ElectionSnapshot base, Scenario scenario) {
+        int shiftCount = scenario.getShifts() == null ? 0 : scenario.getShifts().size();
+        int[] shiftParty = new int[shiftCount];
+        double[] shiftPoints = new double[shiftCount];
+        int k = 0;
+        if (shiftCount > 0) {
+            for (Map.Entry<String, Double> shift : scenario.getShifts().entrySet()) {
+                shiftParty[k] = base.partyIndexByName.get(shift.getKey());
+                shiftPoints[k++] = shift.getValue();
+            }
+        }
+        double thresholdShare = scenario.getThresholdPercent() == null
+                ? AllocationEngine.DEFAULT_THRESHOLD : scenario.getThresholdPercent() / 100;
+        AllocationMethod method = scenario.getMethod() == null ? null : AllocationMethod.parse(scenario.getMethod());
+
+        int width = base.maxPartiesPerDistrict;
+        int[] votes = new int[width];
+        int[] qualified = new int[width];
+        int[] seats = new int[width];
+        int[] bonus = new int[width];
+        Outcome outcome = new Outcome(base);
+        for (int d = 0; d < base.districtIds.length; d++) {
+            int start = base.partyStart[d];
+            int count = base.partyStart[d + 1] - start;
+            System.arraycopy(base.partyVotes, start, votes, 0, count);
+            for (int s = 0; s < shiftCount; s++) {
+                shift(votes, count, base.partyIndex, start, shiftParty[s], shiftPoints[s]);
+            }
+
+            // Same qualification as calculateResults: strictly above the threshold of all ballots cast
+            int threshold = AllocationEngine.threshold(base.totalVotes[d], thresholdShare);
+            long valid = 0;
+            for (int i = 0; i < count; i++) {
+                qualified[i] = base.totalVotes[d] > 0 && votes[i] > threshold ? votes[i] : 0;
+                valid += qualified[i];
+            }
+            if (valid > 0) {
+                (method == null ? base.methods[d] : method).getAllocator()
+                        .allocate(qualified, count, base.seats[d], seats, bonus);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    seats[i] = 0;
+                    bonus[i] = 0;
+                }
+            }
+
+            for (int i = 0; i < count; i++) {
+                int party = base.partyIndex[start + i];
+                outcome.districtSeats[start + i] = seats[i] + bonus[i];
+                outcome.seats[party] += seats[i] + bonus[i];
+                outcome.votes[party] += votes[i];
+            }
+        }
+        return outcome;
+    }
+
+    // Moves the party's share by points percentage points of the district's party votes. The other parties
+    // give up (or receive) the difference in proportion to their votes, and the total stays the same.
+    static void shift(int[] votes, int count, int[] partyIndex, int start, int party, double points) {
+        int target = -1;
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += votes[i];
+            if (target < 0 && partyIndex[start + i] == party) {
+                target = i;
+            }
+        }
+        long others = target < 0 ? 0 : sum - votes[target];
+        // Nothing to exchange when the party is absent or has no opponent with votes
+        if (others == 0) {
+            return;
+        }
+        long delta = Math.max(-votes[target], Math.min(others, Math.round(sum * points / 100)));
+        if (delta == 0) {
+            return;
+        }
+
+        long moved = 0;
+        for (int i = 0; i < count; i++) {
+            if (i != target) {
+                long share = delta * votes[i] / others;
+                votes[i] -= share;
+                moved += share;
+            }
+        }
+        // Rounding leaves fewer than count votes to move; one at a time from or to the other parties in order
+        long remainder = delta - moved;
+        for (int i = 0; remainder != 0; i = (i + 1) % count) {
+            if (i == target) {
+                continue;
+            }
+            if (remainder > 0 && votes[i] > 0) {
+                votes[i]--;
+                remainder--;
+            } else if (remainder < 0) {
+                votes[i]++;
+                remainder++;
+            }
+        }
+        votes[target] += delta;
+    }
+
+    private static ScenarioResult compare(ElectionSnapshot base, Outcome baseline, Scenario scenario, Outcome outcome) {
+        ScenarioResult result = new ScenarioResult(scenario.getName());
+        for (int d = 0; d < base.districtIds.length; d++) {
+            for (int p = base.partyStart[d]; p < base.partyStart[d + 1]; p++) {
+                if (outcome.districtSeats[p] != baseline.districtSeats[p]) {
+                    result.getChangedDistricts().add(base.districtIds[d]);
+                    break;
+                }
+            }
+        }
+        List<ScenarioResult.PartyOutcome> parties = new ArrayList<>(base.partyNames.length);
+        for (int i = 0; i < base.partyNames.length; i++) {
+            parties.add(new ScenarioResult.PartyOutcome(base.partyNames[i], baseline.votes[i], outcome.votes[i],
+                    baseline.seats[i], outcome.seats[i]));
+        }
+        parties.sort((a, b) -> a.getSeats() != b.getSeats()
+                ? Integer.compare(b.getSeats(), a.getSeats())
+                : Long.compare(b.getVotes(), a.getVotes()));
+        result.setParties(parties);
+        return result;
+    }
+}
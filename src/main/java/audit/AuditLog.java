@@ -0,0 +1,200 @@
+package audit;
+
+import metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Append-only log of accepted vote submissions in memory-mapped segment files under audit.dir. A segment
+// starts with a 16-byte header (magic "VAUD", format version, sequence of its first record) followed by
+// frames of payload length (int), CRC-32 of the payload (int) and an AuditRecord; a zero length ends the data.
+// Each segment is mapped at its full audit.segmentBytes when created, and one that cannot fit the next frame
+// is closed in favour of a new one named after that frame's sequence.
+//
+// Written pages reach the file when the OS writes them back, so a process crash loses nothing; audit.fsync
+// also forces every append to disk, to survive power loss. Records are appended after their transaction
+// commits, so a crash between the two can leave a committed submission out of the log.
+public final class AuditLog {
+    static final int MAGIC = 0x56415544;
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int FRAME_HEADER_BYTES = 8;
+
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".log";
+
+    private static final AuditLog INSTANCE = new AuditLog(
+            Paths.get(System.getProperty("audit.dir",
+                    Paths.get(System.getProperty("user.home"), "voting-system", "audit").toString())),
+            Integer.getInteger("audit.segmentBytes", 64 << 20),
+            Boolean.parseBoolean(System.getProperty("audit.fsync", "false")),
+            Boolean.parseBoolean(System.getProperty("audit.enabled", "true")));
+
+    private static final LongAdder APPENDED = Metrics.counter("voting_audit_records_total",
+            "Vote submissions recorded in the audit log");
+    private static final LongAdder FAILURES = Metrics.counter("voting_audit_failures_total",
+            "Accepted vote submissions that could not be recorded in the audit log");
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean fsync;
+    private final boolean enabled;
+    private final CRC32 crc = new CRC32();
+
+    private MappedByteBuffer segment;
+    private Path segmentPath;
+    private long nextSequence = 1;
+    private long lastTimestamp;
+
+    AuditLog(Path directory, int segmentBytes, boolean fsync, boolean enabled) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        this.enabled = enabled;
+    }
+
+    public static AuditLog getInstance() {
+        return INSTANCE;
+    }
+
+    // Continues after the last intact record of the newest segment; a frame torn by a crash is overwritten
+    public synchronized void open() throws IOException {
+        if (!enabled || segment != null) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Path> segments = segments(directory);
+        if (segments.isEmpty()) {
+            create(1);
+            return;
+        }
+        Path last = segments.get(segments.size() - 1);
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+        AuditReader.Scan scan = AuditReader.scan(buffer, Long.MAX_VALUE, null);
+        buffer.position(scan.end);
+        terminate(buffer);
+        segment = buffer;
+        segmentPath = last;
+        nextSequence = scan.lastSequence + 1;
+        lastTimestamp = scan.lastTimestamp;
+    }
+
+    public synchronized void close() {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+    }
+
+    // Never throws: the submission is already committed, so a failure is only counted
+    public void append(AuditRecord record) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            write(record);
+            APPENDED.increment();
+        } catch (IOException | RuntimeException e) {
+            FAILURES.increment();
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("open", segment != null);
+        stats.put("directory", directory.toAbsolutePath().toString());
+        stats.put("segment", segmentPath == null ? null : segmentPath.getFileName().toString());
+        stats.put("segmentUsedBytes", segment == null ? 0 : segment.position());
+        stats.put("nextSequence", nextSequence);
+        stats.put("appended", APPENDED.sum());
+        stats.put("failures", FAILURES.sum());
+        return stats;
+    }
+
+    private synchronized void write(AuditRecord record) throws IOException {
+        if (segment == null) {
+            throw new IOException("Audit log is not open");
+        }
+        int size = record.encodedSize();
+        if (HEADER_BYTES + FRAME_HEADER_BYTES + size > segmentBytes) {
+            throw new IOException("Audit record of " + size + " bytes does not fit in a segment");
+        }
+        if (segment.position() + FRAME_HEADER_BYTES + size > segment.capacity()) {
+            segment.force();
+            create(nextSequence);
+        }
+        // The clock may step back; timestamps along the log must not
+        long timestamp = Math.max(System.currentTimeMillis(), lastTimestamp);
+        record.stamp(nextSequence, timestamp);
+
+        int start = segment.position();
+        segment.position(start + FRAME_HEADER_BYTES);
+        ByteBuffer payload = segment.slice();
+        payload.limit(size);
+        record.encode(payload);
+        payload.flip();
+        crc.reset();
+        crc.update(payload);
+        segment.putInt(start + 4, (int) crc.getValue());
+        // Length last, so a concurrent reader sees either nothing or the whole frame
+        segment.putInt(start, size);
+        segment.position(start + FRAME_HEADER_BYTES + size);
+        terminate(segment);
+        if (fsync) {
+            segment.force();
+        }
+        nextSequence++;
+        lastTimestamp = timestamp;
+    }
+
+    private void create(long firstSequence) throws IOException {
+        Path path = directory.resolve(String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX));
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(firstSequence);
+        buffer.force();
+        segment = buffer;
+        segmentPath = path;
+    }
+
+    // Marks the end of the data at the buffer's position, over whatever a torn write left there
+    private static void terminate(ByteBuffer buffer) {
+        if (buffer.position() + 4 <= buffer.capacity()) {
+            buffer.putInt(buffer.position(), 0);
+        }
+    }
+
+    // Segment files in log order
+    static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+}
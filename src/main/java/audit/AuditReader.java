@@ -0,0 +1,119 @@
+package audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Reads the audit log in sequence order, mapping one segment at a time and decoding frames straight from the
+// mapping. Every frame's CRC is checked; a bad frame at the end of the newest segment is a write torn by a crash
+// and ends the log, while one anywhere else means the log was damaged and fails the read.
+public final class AuditReader {
+    // Where a segment scan stopped
+    static final class Scan {
+        int end;
+        long records;
+        // first - 1 when the segment holds no records
+        long lastSequence;
+        long lastTimestamp;
+        boolean torn;
+        boolean stopped;
+    }
+
+    private AuditReader() {
+    }
+
+    // Passes every record appended at or before until (epoch millis) to the consumer; returns how many
+    public static long read(Path directory, long until, Consumer<AuditRecord> consumer) throws IOException {
+        List<Path> segments = AuditLog.segments(directory);
+        long count = 0;
+        long expected = -1;
+        for (int i = 0; i < segments.size(); i++) {
+            Path path = segments.get(i);
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            long first = header(buffer, path);
+            if (expected >= 0 && first != expected) {
+                throw new IOException(path.getFileName() + " starts at record " + first + ", expected " + expected);
+            }
+            Scan scan = scan(buffer, until, consumer);
+            if (scan.torn && i < segments.size() - 1) {
+                throw new IOException("Corrupt record in " + path.getFileName() + " at offset " + scan.end);
+            }
+            count += scan.records;
+            if (scan.stopped) {
+                break;
+            }
+            expected = scan.lastSequence + 1;
+        }
+        return count;
+    }
+
+    // Walks the frames of one segment from its header; with a consumer, records are decoded and passed on
+    // until one is later than until
+    static Scan scan(ByteBuffer segment, long until, Consumer<AuditRecord> consumer) throws IOException {
+        ByteBuffer buffer = segment.duplicate();
+        long first = header(buffer, null);
+        Scan scan = new Scan();
+        scan.lastSequence = first - 1;
+        int position = AuditLog.HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        while (position + AuditLog.FRAME_HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            int start = position + AuditLog.FRAME_HEADER_BYTES;
+            if (length < 0 || start + length > buffer.capacity()) {
+                scan.torn = true;
+                break;
+            }
+            buffer.limit(start + length).position(start);
+            crc.reset();
+            crc.update(buffer);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                scan.torn = true;
+                break;
+            }
+            buffer.position(start);
+            long sequence = buffer.getLong(start);
+            long timestamp = buffer.getLong(start + 8);
+            if (sequence != scan.lastSequence + 1) {
+                scan.torn = true;
+                break;
+            }
+            if (timestamp > until) {
+                scan.stopped = true;
+                break;
+            }
+            if (consumer != null) {
+                consumer.accept(AuditRecord.decode(buffer));
+            }
+            buffer.limit(buffer.capacity());
+            scan.records++;
+            scan.lastSequence = sequence;
+            scan.lastTimestamp = timestamp;
+            position = start + length;
+        }
+        scan.end = position;
+        return scan;
+    }
+
+    private static long header(ByteBuffer buffer, Path path) throws IOException {
+        String name = path == null ? "Audit segment" : path.getFileName().toString();
+        if (buffer.capacity() < AuditLog.HEADER_BYTES || buffer.getInt(0) != AuditLog.MAGIC) {
+            throw new IOException(name + " is not an audit log segment");
+        }
+        if (buffer.getInt(4) != AuditLog.FORMAT_VERSION) {
+            throw new IOException(name + " has unsupported format version " + buffer.getInt(4));
+        }
+        return buffer.getLong(8);
+    }
+}
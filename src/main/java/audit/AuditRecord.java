@@ -0,0 +1,168 @@
+package audit;
+
+import model.Party;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+// One accepted vote submission. Tallies carry the district's absolute counts after the write; batches carry
+// the increments they added. Party ids refer to the parties table, which the log does not repeat.
+//
+// Encoded as: sequence (long), timestamp (long), kind (byte), districtId, version, totalVotes, party count
+// (ints), then a partyId and votes int per party, then reference and stationId as a length (short, -1 for
+// null) and UTF-8 bytes. A string longer than MAX_STRING_BYTES cannot be encoded, and the record is refused.
+public final class AuditRecord {
+    public enum Kind {
+        // POST /api/votes, committed in the request
+        TALLY,
+        // POST /api/votes?async=true, committed by the write-behind writer; reference is the ticket. One per
+        // ticket: tickets coalesced into one commit share its version, each with the counts as of that ticket.
+        ASYNC_TALLY,
+        // POST /api/votes/batch; reference is the batch id
+        BATCH
+    }
+
+    static final int MAX_STRING_BYTES = Short.MAX_VALUE;
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private long sequence;
+    private long timestamp;
+    private final Kind kind;
+    private final int districtId;
+    private final int version;
+    private final int totalVotes;
+    private final int[] partyIds;
+    private final int[] votes;
+    private final String reference;
+    private final String stationId;
+
+    private AuditRecord(Kind kind, int districtId, int version, int totalVotes, int[] partyIds, int[] votes,
+                        String reference, String stationId) {
+        this.kind = kind;
+        this.districtId = districtId;
+        this.version = version;
+        this.totalVotes = totalVotes;
+        this.partyIds = partyIds;
+        this.votes = votes;
+        this.reference = reference;
+        this.stationId = stationId;
+    }
+
+    // The district's counts as committed at that version
+    public static AuditRecord tally(Kind kind, int districtId, int version, int totalVotes, List<Party> parties,
+                                    String reference) {
+        int[] partyIds = new int[parties.size()];
+        int[] votes = new int[parties.size()];
+        for (int i = 0; i < partyIds.length; i++) {
+            partyIds[i] = parties.get(i).getId();
+            votes[i] = parties.get(i).getVotes();
+        }
+        return new AuditRecord(kind, districtId, version, totalVotes, partyIds, votes, reference, null);
+    }
+
+    public static AuditRecord batch(int districtId, int version, int totalVotes, Map<Integer, Integer> increments,
+                                    String batchId, String stationId) {
+        int[] partyIds = new int[increments.size()];
+        int[] votes = new int[increments.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> increment : increments.entrySet()) {
+            partyIds[i] = increment.getKey();
+            votes[i++] = increment.getValue();
+        }
+        return new AuditRecord(Kind.BATCH, districtId, version, totalVotes, partyIds, votes, batchId, stationId);
+    }
+
+    // Getters
+    public long getSequence() { return sequence; }
+    // Milliseconds since the epoch when the record was appended; never decreases along the log
+    public long getTimestamp() { return timestamp; }
+    public Kind getKind() { return kind; }
+    public int getDistrictId() { return districtId; }
+    public int getVersion() { return version; }
+    // Absolute for tallies, an increment for batches
+    public int getTotalVotes() { return totalVotes; }
+    public int getPartyCount() { return partyIds.length; }
+    public int getPartyId(int index) { return partyIds[index]; }
+    public int getVotes(int index) { return votes[index]; }
+    public String getReference() { return reference; }
+    public String getStationId() { return stationId; }
+
+    void stamp(long sequence, long timestamp) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+    }
+
+    // Checks the strings too, so a record that cannot be encoded fails here, before anything is written
+    int encodedSize() {
+        return 8 + 8 + 1 + 4 * 4 + 8 * partyIds.length + stringSize(reference) + stringSize(stationId);
+    }
+
+    void encode(ByteBuffer out) {
+        out.putLong(sequence);
+        out.putLong(timestamp);
+        out.put((byte) kind.ordinal());
+        out.putInt(districtId);
+        out.putInt(version);
+        out.putInt(totalVotes);
+        out.putInt(partyIds.length);
+        for (int i = 0; i < partyIds.length; i++) {
+            out.putInt(partyIds[i]);
+            out.putInt(votes[i]);
+        }
+        putString(out, reference);
+        putString(out, stationId);
+    }
+
+    static AuditRecord decode(ByteBuffer in) {
+        long sequence = in.getLong();
+        long timestamp = in.getLong();
+        Kind kind = KINDS[in.get()];
+        int districtId = in.getInt();
+        int version = in.getInt();
+        int totalVotes = in.getInt();
+        int count = in.getInt();
+        int[] partyIds = new int[count];
+        int[] votes = new int[count];
+        for (int i = 0; i < count; i++) {
+            partyIds[i] = in.getInt();
+            votes[i] = in.getInt();
+        }
+        String reference = getString(in);
+        String stationId = getString(in);
+        AuditRecord record = new AuditRecord(kind, districtId, version, totalVotes, partyIds, votes, reference, stationId);
+        record.stamp(sequence, timestamp);
+        return record;
+    }
+
+    private static int stringSize(String value) {
+        int length = value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length;
+        if (length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Audit record string of " + length + " bytes exceeds the "
+                    + MAX_STRING_BYTES + " byte limit");
+        }
+        return 2 + length;
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            out.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
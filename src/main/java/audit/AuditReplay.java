@@ -0,0 +1,294 @@
+package audit;
+
+import allocation.AllocationEngine;
+import com.google.gson.GsonBuilder;
+import database.DatabaseUtil;
+import database.DistrictRepository;
+import database.ResultSnapshots;
+import model.District;
+import model.Party;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Rebuilds district vote counts from audit logs, as of now or of any earlier point in time:
+//
+//   java -cp <classes and dependencies> [-Ddb.url=...] audit.AuditReplay --dir=<audit.dir>[,<audit.dir>...]
+//        [--until=<ISO instant or epoch millis>] [--district=<id>] [--mode=results|counts|verify|apply]
+//
+// Give the audit.dir of every node that took writes. Per district the tally with the highest version sets
+// the counts, and batches committed at a higher version add to them, so the logs may be read in any order.
+// Async tallies coalesced into one commit share its version and come from one log, where the last one holds
+// the committed counts.
+// Only districts that appear in the logs are replayed.
+//
+//   results  recomputes seats for the replayed counts, with names, seats and methods from the database (default)
+//   counts   prints the replayed counts without touching the database
+//   verify   compares the replayed counts with the database and exits with 1 on any difference
+//   apply    writes the replayed counts and recomputed seats back to the database in one transaction; refused
+//            when a replayed district has batches but no tally in the logs, as its counts from before the logs
+//            began are unknown and writing the batch sums alone would wipe them
+public final class AuditReplay {
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("dir", System.getProperty("audit.dir",
+                Paths.get(System.getProperty("user.home"), "voting-system", "audit").toString()));
+        DEFAULTS.put("until", "");
+        DEFAULTS.put("district", "");
+        DEFAULTS.put("mode", "results");
+    }
+
+    // One district's replayed counts
+    static final class State {
+        // -1 until a tally has been seen
+        int version = -1;
+        // Whether the counts start from a tally, rather than from batches alone
+        boolean tallied;
+        int totalVotes;
+        final Map<Integer, Integer> votes = new HashMap<>();
+        // Batches that may still be later than the latest tally
+        final List<AuditRecord> batches = new ArrayList<>();
+
+        void apply(AuditRecord record) {
+            if (record.getKind() == AuditRecord.Kind.BATCH) {
+                if (record.getVersion() > version) {
+                    batches.add(record);
+                }
+                return;
+            }
+            if (record.getVersion() < version) {
+                return;
+            }
+            version = record.getVersion();
+            tallied = true;
+            totalVotes = record.getTotalVotes();
+            votes.clear();
+            for (int i = 0; i < record.getPartyCount(); i++) {
+                votes.put(record.getPartyId(i), record.getVotes(i));
+            }
+            // Counted in the tally's absolute counts already
+            batches.removeIf(batch -> batch.getVersion() <= version);
+        }
+
+        // Folds the remaining batches in; call once, after the last record
+        State finish() {
+            for (Iterator<AuditRecord> it = batches.iterator(); it.hasNext(); ) {
+                AuditRecord batch = it.next();
+                totalVotes += batch.getTotalVotes();
+                for (int i = 0; i < batch.getPartyCount(); i++) {
+                    votes.merge(batch.getPartyId(i), batch.getVotes(i), Integer::sum);
+                }
+                version = Math.max(version, batch.getVersion());
+                it.remove();
+            }
+            return this;
+        }
+    }
+
+    private AuditReplay() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        long until = parseTime(options.get("until"));
+        int districtFilter = options.get("district").isEmpty() ? -1 : Integer.parseInt(options.get("district"));
+        String mode = options.get("mode");
+
+        long start = System.nanoTime();
+        Map<Integer, State> states = new TreeMap<>();
+        long records = 0;
+        for (String dir : options.get("dir").split(",")) {
+            Path directory = Paths.get(dir.trim());
+            records += AuditReader.read(directory, until, record -> {
+                if (districtFilter < 0 || record.getDistrictId() == districtFilter) {
+                    states.computeIfAbsent(record.getDistrictId(), id -> new State()).apply(record);
+                }
+            });
+        }
+        for (State state : states.values()) {
+            state.finish();
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        System.err.printf("Replayed %d records into %d districts in %.1f ms (%.0f records/s)%n", records,
+                states.size(), elapsedNanos / 1e6, records / Math.max(elapsedNanos / 1e9, 1e-9));
+
+        int exitCode = 0;
+        switch (mode) {
+            case "counts":
+                print(counts(states));
+                break;
+            case "results":
+                try (Connection conn = DatabaseUtil.getConnection()) {
+                    print(rebuild(DistrictRepository.fetchAllWithParties(conn), states));
+                }
+                break;
+            case "verify":
+                try (Connection conn = DatabaseUtil.getConnection()) {
+                    List<Map<String, Object>> differences = verify(DistrictRepository.fetchAllWithParties(conn), states);
+                    print(differences);
+                    exitCode = differences.isEmpty() ? 0 : 1;
+                }
+                break;
+            case "apply":
+                try (Connection conn = DatabaseUtil.getConnection()) {
+                    print(apply(conn, states));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode " + mode + "; expected results, counts, verify or apply");
+        }
+        DatabaseUtil.shutdown();
+        System.exit(exitCode);
+    }
+
+    private static List<Map<String, Object>> counts(Map<Integer, State> states) {
+        List<Map<String, Object>> counts = new ArrayList<>();
+        for (Map.Entry<Integer, State> entry : states.entrySet()) {
+            Map<String, Object> district = new LinkedHashMap<>();
+            district.put("districtId", entry.getKey());
+            district.put("version", entry.getValue().version);
+            district.put("tallied", entry.getValue().tallied);
+            district.put("totalVotes", entry.getValue().totalVotes);
+            district.put("partyVotes", new TreeMap<>(entry.getValue().votes));
+            counts.add(district);
+        }
+        return counts;
+    }
+
+    // The replayed districts with seats recomputed; the districts passed in are updated
+    private static List<District> rebuild(List<District> districts, Map<Integer, State> states) {
+        List<District> rebuilt = new ArrayList<>();
+        for (District district : districts) {
+            State state = states.get(district.getId());
+            if (state != null) {
+                overlay(district, state);
+                AllocationEngine.calculateResults(district);
+                rebuilt.add(district);
+            }
+        }
+        return rebuilt;
+    }
+
+    private static void overlay(District district, State state) {
+        district.setTotalVotes(state.totalVotes);
+        for (Party party : district.getParties()) {
+            party.setVotes(state.votes.getOrDefault(party.getId(), 0));
+        }
+    }
+
+    private static List<Map<String, Object>> verify(List<District> districts, Map<Integer, State> states) {
+        List<Map<String, Object>> differences = new ArrayList<>();
+        Map<Integer, District> byId = new HashMap<>();
+        for (District district : districts) {
+            byId.put(district.getId(), district);
+        }
+        for (Map.Entry<Integer, State> entry : states.entrySet()) {
+            District district = byId.get(entry.getKey());
+            State state = entry.getValue();
+            Map<String, Object> difference = new LinkedHashMap<>();
+            if (district == null) {
+                difference.put("error", "District not found");
+            } else {
+                if (district.getTotalVotes() != state.totalVotes) {
+                    difference.put("totalVotes", new int[]{district.getTotalVotes(), state.totalVotes});
+                }
+                Map<String, int[]> parties = new TreeMap<>();
+                for (Party party : district.getParties()) {
+                    int replayed = state.votes.getOrDefault(party.getId(), 0);
+                    if (party.getVotes() != replayed) {
+                        parties.put(party.getName(), new int[]{party.getVotes(), replayed});
+                    }
+                }
+                if (!parties.isEmpty()) {
+                    difference.put("partyVotes", parties);
+                }
+            }
+            if (!difference.isEmpty()) {
+                Map<String, Object> entryDifference = new LinkedHashMap<>();
+                entryDifference.put("districtId", entry.getKey());
+                // Pairs are [database, replayed]
+                entryDifference.putAll(difference);
+                differences.add(entryDifference);
+            }
+        }
+        return differences;
+    }
+
+    private static List<District> apply(Connection conn, Map<Integer, State> states) throws Exception {
+        List<Integer> untallied = new ArrayList<>();
+        for (Map.Entry<Integer, State> entry : states.entrySet()) {
+            if (!entry.getValue().tallied) {
+                untallied.add(entry.getKey());
+            }
+        }
+        if (!untallied.isEmpty()) {
+            throw new IllegalStateException("Districts " + untallied + " have batches but no tally in the logs, so their "
+                    + "counts from before the logs began are unknown; submit a tally for them first, or apply other districts "
+                    + "one at a time with --district=<id>");
+        }
+        List<District> written = new ArrayList<>();
+        ResultSnapshots.LeaderboardDeltas deltas = new ResultSnapshots.LeaderboardDeltas();
+        conn.setAutoCommit(false);
+        try {
+            // In district id order, so row locks are taken in the same order as other writers take them
+            for (Map.Entry<Integer, State> entry : states.entrySet()) {
+                District district = DistrictRepository.fetchDistrictForUpdate(conn, entry.getKey());
+                if (district == null) {
+                    throw new IllegalArgumentException("District with ID " + entry.getKey() + " not found");
+                }
+                overlay(district, entry.getValue());
+                AllocationEngine.calculateResults(district);
+                DistrictRepository.writeDistrict(conn, district, deltas);
+                written.add(district);
+            }
+            deltas.apply(conn);
+            conn.commit();
+        } catch (Exception e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        for (District district : written) {
+            district.setVersion(district.getVersion() + 1);
+        }
+        return written;
+    }
+
+    private static void print(Object value) {
+        System.out.println(new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(value));
+    }
+
+    private static long parseTime(String value) {
+        if (value.isEmpty()) {
+            return Long.MAX_VALUE;
+        }
+        if (value.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(value);
+        }
+        return Instant.parse(value).toEpochMilli();
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0 || !DEFAULTS.containsKey(arg.substring(2, eq))) {
+                throw new IllegalArgumentException("Unknown option " + arg + "; expected --name=value with name one of "
+                        + DEFAULTS.keySet());
+            }
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
@@ -0,0 +1,267 @@
+package cache;
+
+import model.District;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Read-through cache of district results. Cached District instances are shared between requests and must
+// not be mutated; writers load their own copy from the database and hand the committed result to put().
+// Writers do not all serialize on the district lock, so put() and invalidations can arrive out of commit
+// order; a version older than one already cached or invalidated is dropped.
+public class DistrictCache {
+    private static final DistrictCache INSTANCE = new DistrictCache(
+            Integer.getInteger("cache.districts.maxSize", 1000),
+            Long.getLong("cache.districts.ttlMillis", 60_000L));
+
+    private final int maxSize;
+    private final long ttlMillis;
+
+    // Access-ordered, so iteration starts at the least recently used entry
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Newest version invalidated per district, so an older result published late is not cached after it
+    private final Map<Integer, Integer> invalidatedVersions = new HashMap<>();
+    // Bumped by every write, so a load that overlapped a write does not cache what it read
+    private long generation;
+    private long generationChangedAt = System.currentTimeMillis();
+    // Distinguishes generations of different processes, which all start counting from zero
+    private final String instanceId = Long.toHexString(System.nanoTime() ^ Double.doubleToLongBits(Math.random()));
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public interface DistrictLoader {
+        District load(int districtId) throws Exception;
+    }
+
+    public DistrictCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+    }
+
+    public static DistrictCache getInstance() {
+        return INSTANCE;
+    }
+
+    public District get(int districtId, DistrictLoader loader) throws Exception {
+        long now = System.currentTimeMillis();
+        long loadGeneration;
+        synchronized (entries) {
+            loadGeneration = generation;
+            Entry entry = entries.get(districtId);
+            if (entry != null) {
+                if (now - entry.loadedAt < ttlMillis) {
+                    hits.increment();
+                    return entry.district;
+                }
+                // Keep the expired entry until the reload lands so its Last-Modified time can carry over
+                expirations.increment();
+            }
+        }
+        misses.increment();
+        District district = loader.load(districtId);
+        synchronized (entries) {
+            if (district == null) {
+                entries.remove(districtId);
+            } else if (generation == loadGeneration) {
+                store(district, now);
+            }
+        }
+        return district;
+    }
+
+    // Returns the cached district if it is still fresh, without loading it
+    public District getIfPresent(int districtId) {
+        synchronized (entries) {
+            Entry entry = entries.get(districtId);
+            if (entry != null && System.currentTimeMillis() - entry.loadedAt < ttlMillis) {
+                hits.increment();
+                return entry.district;
+            }
+            return null;
+        }
+    }
+
+    // Time this node first saw the cached version of the district, or -1 if it is not cached
+    public long lastModified(int districtId) {
+        synchronized (entries) {
+            Entry entry = entries.get(districtId);
+            return entry == null ? -1 : entry.modifiedAt;
+        }
+    }
+
+    // Time of the last write or invalidation seen by this node
+    public long lastChange() {
+        synchronized (entries) {
+            return generationChangedAt;
+        }
+    }
+
+    // Replaces the cached district with a freshly committed result
+    public void put(District district) {
+        synchronized (entries) {
+            advanceGeneration();
+            store(district, System.currentTimeMillis());
+        }
+    }
+
+    public void invalidate(int districtId) {
+        synchronized (entries) {
+            advanceGeneration();
+            if (entries.remove(districtId) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    // For a committed change that is not handed to put(); results older than that version are no longer cached
+    public void invalidate(int districtId, int version) {
+        synchronized (entries) {
+            invalidatedVersions.merge(districtId, version, Math::max);
+            invalidate(districtId);
+        }
+    }
+
+    // For a change made through another node, which never reaches put(). Drops the district unless the cached
+    // copy is already at least that version, and returns false only in that case.
+    public boolean invalidateIfOlder(int districtId, int version) {
+        synchronized (entries) {
+            Entry entry = entries.get(districtId);
+            if (entry != null && entry.district.getVersion() >= version) {
+                return false;
+            }
+            invalidatedVersions.merge(districtId, version, Math::max);
+            advanceGeneration();
+            if (entry != null) {
+                entries.remove(districtId);
+                invalidations.increment();
+            }
+            return true;
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            advanceGeneration();
+            invalidations.add(entries.size());
+            entries.clear();
+        }
+    }
+
+    // For changes that affect district listings but no cached district, such as a new district
+    public void invalidateList() {
+        synchronized (entries) {
+            advanceGeneration();
+        }
+    }
+
+    // Changes on every write and invalidation, so derived results can tell whether they are still current
+    public long getGeneration() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    // Opaque token for the current generation that is unique across restarts and nodes
+    public String getGenerationTag() {
+        synchronized (entries) {
+            return instanceId + "-" + generation;
+        }
+    }
+
+    public Stats getStats() {
+        Stats stats = new Stats();
+        synchronized (entries) {
+            stats.size = entries.size();
+        }
+        stats.maxSize = maxSize;
+        stats.ttlMillis = ttlMillis;
+        stats.hits = hits.sum();
+        stats.misses = misses.sum();
+        stats.evictions = evictions.sum();
+        stats.expirations = expirations.sum();
+        stats.invalidations = invalidations.sum();
+        long lookups = stats.hits + stats.misses;
+        stats.hitRatio = lookups == 0 ? 0 : (double) stats.hits / lookups;
+        return stats;
+    }
+
+    // Caller holds the entries lock
+    private void advanceGeneration() {
+        generation++;
+        generationChangedAt = System.currentTimeMillis();
+    }
+
+    // Caller holds the entries lock
+    private void store(District district, long loadedAt) {
+        Entry existing = entries.get(district.getId());
+        // Never replace a newer committed version with an older one
+        if (existing != null && existing.district.getVersion() > district.getVersion()) {
+            return;
+        }
+        Integer invalidated = invalidatedVersions.get(district.getId());
+        if (invalidated != null && invalidated > district.getVersion()) {
+            return;
+        }
+        long modifiedAt = existing != null && existing.district.getVersion() == district.getVersion()
+                ? existing.modifiedAt : loadedAt;
+        entries.put(district.getId(), new Entry(district, loadedAt, modifiedAt));
+        Iterator<Map.Entry<Integer, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    // Changes whenever a district is added or any district's version moves
+    public static long signature(List<District> districts) {
+        long hash = 17;
+        for (District district : districts) {
+            hash = 31 * hash + district.getId();
+            hash = 31 * hash + district.getVersion();
+        }
+        return hash;
+    }
+
+    private static final class Entry {
+        final District district;
+        final long loadedAt;
+        final long modifiedAt;
+
+        Entry(District district, long loadedAt, long modifiedAt) {
+            this.district = district;
+            this.loadedAt = loadedAt;
+            this.modifiedAt = modifiedAt;
+        }
+    }
+
+    public static class Stats {
+        private int size;
+        private int maxSize;
+        private long ttlMillis;
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long expirations;
+        private long invalidations;
+        private double hitRatio;
+
+        public int getSize() { return size; }
+        public int getMaxSize() { return maxSize; }
+        public long getTtlMillis() { return ttlMillis; }
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+        public long getExpirations() { return expirations; }
+        public long getInvalidations() { return invalidations; }
+        public double getHitRatio() { return hitRatio; }
+    }
+}
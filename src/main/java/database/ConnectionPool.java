@@ -0,0 +1,315 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConnectionPool {
+    private final String name;
+    private final String url;
+    // User, password and driver settings
+    private final Properties connectionProperties;
+    private final int maxSize;
+    private final int minIdle;
+    private final long maxWaitMillis;
+    private final long idleTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final int validationTimeoutSeconds;
+
+    // Permits bound the number of leased connections; the deque holds idle ones (most recently used first)
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    private final AtomicLong active = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+
+    public ConnectionPool(String name, String url, Properties connectionProperties, int maxSize, int minIdle,
+                          long maxWaitMillis, long idleTimeoutMillis, long validationIntervalMillis,
+                          int validationTimeoutSeconds) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive");
+        }
+        this.name = name;
+        this.url = url;
+        this.connectionProperties = connectionProperties;
+        this.maxSize = maxSize;
+        this.minIdle = Math.min(Math.max(minIdle, 0), maxSize);
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-evictor-" + name);
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000L, Math.min(idleTimeoutMillis, 30_000L));
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool " + name + " is shut down");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLException("Timed out after " + maxWaitMillis + " ms waiting for a connection from pool " + name);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection from pool " + name);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            Connection physical = takeIdleOrCreate();
+            active.incrementAndGet();
+            return lease(physical);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // Idle connections hold no permit, so a new one is only opened while a permit is free for each idle
+    // connection: leased plus idle never exceeds maxSize, even when the pool is fully leased
+    public void warmUp() throws SQLException {
+        while (idle.size() < minIdle && !closed) {
+            if (!permits.tryAcquire()) {
+                return;
+            }
+            try {
+                if (idle.size() > permits.availablePermits()) {
+                    return;
+                }
+                idle.offerLast(new IdleConnection(createPhysical()));
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    public void shutdown() {
+        closed = true;
+        evictor.shutdownNow();
+        IdleConnection ic;
+        while ((ic = idle.pollFirst()) != null) {
+            destroy(ic.connection);
+        }
+    }
+
+    public Stats getStats() {
+        Stats stats = new Stats();
+        stats.name = name;
+        stats.maxSize = maxSize;
+        stats.minIdle = minIdle;
+        stats.active = active.get();
+        stats.idle = idle.size();
+        stats.waiting = permits.getQueueLength();
+        stats.created = created.get();
+        stats.destroyed = destroyed.get();
+        stats.borrows = borrows.sum();
+        stats.timeouts = timeouts.sum();
+        stats.validationFailures = validationFailures.sum();
+        long totalWait = totalWaitNanos.sum();
+        stats.avgWaitMillis = stats.borrows == 0 ? 0 : (double) totalWait / stats.borrows / 1_000_000d;
+        stats.maxWaitMillis = maxWaitNanos.get() / 1_000_000d;
+        return stats;
+    }
+
+    private Connection takeIdleOrCreate() throws SQLException {
+        IdleConnection ic;
+        while ((ic = idle.pollFirst()) != null) {
+            if (isUsable(ic)) {
+                return ic.connection;
+            }
+            validationFailures.increment();
+            destroy(ic.connection);
+        }
+        return createPhysical();
+    }
+
+    private boolean isUsable(IdleConnection ic) {
+        if (System.currentTimeMillis() - ic.lastUsed < validationIntervalMillis) {
+            return true;
+        }
+        try {
+            return ic.connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private Connection createPhysical() throws SQLException {
+        Connection conn = DriverManager.getConnection(url, connectionProperties);
+        created.incrementAndGet();
+        return conn;
+    }
+
+    private void destroy(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException ignored) {
+            // The connection is being discarded anyway
+        }
+        destroyed.incrementAndGet();
+    }
+
+    private void recordWait(long nanos) {
+        borrows.increment();
+        totalWaitNanos.add(nanos);
+        long prev;
+        while (nanos > (prev = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(prev, nanos)) {
+            // retry until the maximum is published
+        }
+    }
+
+    private void release(Connection physical) {
+        active.decrementAndGet();
+        try {
+            if (closed || physical.isClosed()) {
+                destroy(physical);
+                return;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            physical.clearWarnings();
+            idle.offerFirst(new IdleConnection(physical));
+        } catch (SQLException e) {
+            destroy(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void evictIdle() {
+        try {
+            long now = System.currentTimeMillis();
+            // Oldest connections sit at the tail of the deque
+            Iterator<IdleConnection> it = idle.descendingIterator();
+            while (it.hasNext() && idle.size() > minIdle) {
+                IdleConnection ic = it.next();
+                if (now - ic.lastUsed >= idleTimeoutMillis && idle.remove(ic)) {
+                    destroy(ic.connection);
+                }
+            }
+            warmUp();
+        } catch (Exception ignored) {
+            // Retried on the next eviction run
+        }
+    }
+
+    private Connection lease(Connection physical) {
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new LeasedConnection(physical));
+    }
+
+    private static final class IdleConnection {
+        final Connection connection;
+        final long lastUsed;
+
+        IdleConnection(Connection connection) {
+            this.connection = connection;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    private final class LeasedConnection implements InvocationHandler {
+        private final Connection physical;
+        // Not synchronized: a leased connection is used by one thread at a time, and a monitor held across
+        // every JDBC call would pin a virtual thread to its carrier
+        private final AtomicBoolean returned = new AtomicBoolean();
+
+        LeasedConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        release(physical);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + name + "] " + physical;
+                default:
+                    if (returned.get()) {
+                        throw new SQLException("Connection has already been returned to pool " + name);
+                    }
+                    try {
+                        return method.invoke(physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    public static class Stats {
+        private String name;
+        private int maxSize;
+        private int minIdle;
+        private long active;
+        private long idle;
+        private long waiting;
+        private long created;
+        private long destroyed;
+        private long borrows;
+        private long timeouts;
+        private long validationFailures;
+        private double avgWaitMillis;
+        private double maxWaitMillis;
+
+        public String getName() { return name; }
+        public int getMaxSize() { return maxSize; }
+        public int getMinIdle() { return minIdle; }
+        public long getActive() { return active; }
+        public long getIdle() { return idle; }
+        public long getWaiting() { return waiting; }
+        public long getCreated() { return created; }
+        public long getDestroyed() { return destroyed; }
+        public long getBorrows() { return borrows; }
+        public long getTimeouts() { return timeouts; }
+        public long getValidationFailures() { return validationFailures; }
+        public double getAvgWaitMillis() { return avgWaitMillis; }
+        public double getMaxWaitMillis() { return maxWaitMillis; }
+    }
+}
@@ -1,14 +1,24 @@
 package database;
 
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
 
 public class DatabaseUtil {
-    private static final String URL = "jdbc:mysql://localhost:3306/voting_system";
+    private static final String URL = "jdbc:mysql://localhost:3306/voting_system?rewriteBatchedStatements=true&useCursorFetch=true";
     private static final String USER = "root";
     private static final String PASSWORD = "root";
 
+    private static final LatencyHistogram ACQUIRE_TIME = Metrics.histogram("voting_db_connection_acquire_seconds",
+            "Time to obtain a connection from the pool");
+
+    private static volatile ConnectionPool pool;
+
     static {
         try {
             Class.forName("com.mysql.cj.jdbc.Driver");
@@ -18,6 +28,131 @@ public class DatabaseUtil {
     }
 
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        long start = System.nanoTime();
+        Connection conn = pool().getConnection();
+        ACQUIRE_TIME.recordSince(start);
+        return conn;
+    }
+
+    // SQLState class 40: the database rolled the transaction back to break a deadlock or a serialization
+    // conflict, so running it again can succeed
+    public static boolean isRolledBack(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("40");
+    }
+
+    // Settings are resolved from -Ddb.* system properties, then the given properties, then the defaults
+    public static synchronized void start(Properties overrides) throws SQLException {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        Properties settings = overrides == null ? new Properties() : overrides;
+        pool = createPool("primary", setting(settings, "db.url", URL), settings);
+        ReplicaRouter.start(createReplicas(settings),
+                intSetting(settings, "db.replica.trackMillis", 10_000),
+                intSetting(settings, "db.replica.backoffMillis", 1_000));
+        pool.warmUp();
+    }
+
+    public static synchronized void shutdown() {
+        ReplicaRouter.shutdown();
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    public static ConnectionPool.Stats getPoolStats() {
+        return pool().getStats();
+    }
+
+    private static ConnectionPool pool() {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (DatabaseUtil.class) {
+                if (pool == null) {
+                    pool = createPool("primary", setting(new Properties(), "db.url", URL), new Properties());
+                }
+                p = pool;
+            }
+        }
+        return p;
+    }
+
+    // db.replicas lists the JDBC URLs of read replicas, comma-separated; they share the primary's settings.
+    // A replica that is down at startup is connected to lazily and skipped by the router until it answers.
+    private static List<ConnectionPool> createReplicas(Properties overrides) {
+        List<ConnectionPool> replicas = new ArrayList<>();
+        String urls = setting(overrides, "db.replicas", "");
+        for (String url : urls.split(",")) {
+            if (url.trim().isEmpty()) {
+                continue;
+            }
+            ConnectionPool replica = createPool("replica-" + (replicas.size() + 1), url.trim(), overrides);
+            try {
+                replica.warmUp();
+            } catch (SQLException ignored) {
+                // Connections are created on demand once the replica is reachable
+            }
+            replicas.add(replica);
+        }
+        return replicas;
+    }
+
+    private static ConnectionPool createPool(String name, String url, Properties overrides) {
+        return new ConnectionPool(
+                name,
+                url,
+                connectionProperties(overrides),
+                intSetting(overrides, "db.pool.maxSize", 20),
+                intSetting(overrides, "db.pool.minIdle", 5),
+                intSetting(overrides, "db.pool.maxWaitMillis", 5000),
+                intSetting(overrides, "db.pool.idleTimeoutMillis", 600_000),
+                intSetting(overrides, "db.pool.validationIntervalMillis", 30_000),
+                intSetting(overrides, "db.pool.validationTimeoutSeconds", 2));
+    }
+
+    // Statements are prepared on the server once per physical connection and reused from the driver's cache
+    // on every later prepareStatement with the same SQL. Any db.driver.<name> setting is passed to the driver,
+    // so these defaults can be overridden even when db.url is replaced.
+    private static Properties connectionProperties(Properties overrides) {
+        Properties driver = new Properties();
+        driver.setProperty("user", setting(overrides, "db.user", USER));
+        driver.setProperty("password", setting(overrides, "db.password", PASSWORD));
+        driver.setProperty("useServerPrepStmts", "true");
+        driver.setProperty("cachePrepStmts", "true");
+        driver.setProperty("prepStmtCacheSize", "256");
+        driver.setProperty("prepStmtCacheSqlLimit", "2048");
+        driver.setProperty("cacheResultSetMetadata", "true");
+        for (String key : overrides.stringPropertyNames()) {
+            if (key.startsWith("db.driver.")) {
+                driver.setProperty(key.substring("db.driver.".length()), overrides.getProperty(key));
+            }
+        }
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("db.driver.")) {
+                driver.setProperty(key.substring("db.driver.".length()), System.getProperty(key));
+            }
+        }
+        return driver;
+    }
+
+    static String setting(Properties overrides, String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            value = overrides.getProperty(key);
+        }
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    static int intSetting(Properties overrides, String key, int defaultValue) {
+        String value = setting(overrides, key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a valid integer");
+        }
     }
-}
\ No newline at end of file
+}
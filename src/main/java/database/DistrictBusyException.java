@@ -0,0 +1,20 @@
+package database;
+
+import java.io.IOException;
+
+public class DistrictBusyException extends IOException {
+    private final int districtId;
+
+    public DistrictBusyException(int districtId) {
+        super("District " + districtId + " is busy with other submissions; retry later");
+        this.districtId = districtId;
+    }
+
+    // The database rolled the transaction back, typically to break a deadlock with another writer
+    public DistrictBusyException(int districtId, Throwable cause) {
+        this(districtId);
+        initCause(cause);
+    }
+
+    public int getDistrictId() { return districtId; }
+}
@@ -0,0 +1,249 @@
+package database;
+
+import model.District;
+import model.Party;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reads and writes district results on a caller-supplied connection. The SQL is fixed per operation so the
+// driver's prepared-statement cache can reuse the server-side statement on each pooled connection, and rows
+// are read by column position.
+public final class DistrictRepository {
+    // Column order is relied upon by mapDistrict and mapParty
+    public static final String DISTRICT_COLUMNS =
+            "id, name, seats, total_votes, valid_votes, disqualified_votes, vote_threshold, version, allocation_method";
+    static final String PARTY_COLUMNS =
+            "id, name, votes, qualified, first_round_seats, second_round_seats, bonus_seat, total_seats";
+    private static final int DISTRICT_COLUMN_COUNT = 9;
+
+    private static final String SELECT_DISTRICT = "SELECT " + DISTRICT_COLUMNS + " FROM districts WHERE id = ?";
+    private static final String SELECT_DISTRICT_FOR_UPDATE = SELECT_DISTRICT + " FOR UPDATE";
+    // Served from idx_parties_district (district_id, id), which also yields the id order
+    private static final String SELECT_PARTIES = "SELECT " + PARTY_COLUMNS + " FROM parties WHERE district_id = ? ORDER BY id";
+    private static final String SELECT_PARTIES_FOR_UPDATE = SELECT_PARTIES + " FOR UPDATE";
+    private static final String SELECT_ALL_WITH_PARTIES = "SELECT d.id, d.name, d.seats, d.total_votes, d.valid_votes, "
+            + "d.disqualified_votes, d.vote_threshold, d.version, d.allocation_method, p.id, p.name, p.votes, p.qualified, "
+            + "p.first_round_seats, p.second_round_seats, p.bonus_seat, p.total_seats "
+            + "FROM districts d LEFT JOIN parties p ON p.district_id = d.id ORDER BY d.id, p.id";
+    public static final String INSERT_DISTRICT = "INSERT INTO districts (name, seats, allocation_method) VALUES (?, ?, ?)";
+    private static final String UPDATE_DISTRICT = "UPDATE districts SET total_votes = ?, valid_votes = ?, "
+            + "disqualified_votes = ?, vote_threshold = ?, version = version + 1 WHERE id = ? AND version = ?";
+    private static final String UPDATE_PARTY = "UPDATE parties SET votes = ?, qualified = ?, first_round_seats = ?, "
+            + "second_round_seats = ?, bonus_seat = ?, total_seats = ? WHERE district_id = ? AND id = ?";
+
+    private DistrictRepository() {
+    }
+
+    public static District fetchDistrictById(Connection conn, int id) throws SQLException {
+        return fetchDistrict(conn, id, false);
+    }
+
+    // Locks the district row until the caller's transaction ends. Every writer of a district's results
+    // updates that row first, so its parties are not changed by anyone else in the meantime either.
+    // The parties are read with a locking read as well, so they are current even in a transaction that
+    // has already read other districts.
+    public static District fetchDistrictForUpdate(Connection conn, int id) throws SQLException {
+        return fetchDistrict(conn, id, true);
+    }
+
+    private static District fetchDistrict(Connection conn, int id, boolean forUpdate) throws SQLException {
+        District district = null;
+        try (PreparedStatement stmt = conn.prepareStatement(forUpdate ? SELECT_DISTRICT_FOR_UPDATE : SELECT_DISTRICT)) {
+            stmt.setInt(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    district = mapDistrict(rs, 0);
+                }
+            }
+        }
+
+        if (district != null) {
+            district.setParties(fetchParties(conn, id, forUpdate));
+        }
+        return district;
+    }
+
+    public static List<Party> fetchPartiesByDistrictId(Connection conn, int districtId) throws SQLException {
+        return fetchParties(conn, districtId, false);
+    }
+
+    private static List<Party> fetchParties(Connection conn, int districtId, boolean forUpdate) throws SQLException {
+        List<Party> parties = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(forUpdate ? SELECT_PARTIES_FOR_UPDATE : SELECT_PARTIES)) {
+            stmt.setInt(1, districtId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    parties.add(mapParty(rs, 0));
+                }
+            }
+        }
+        return parties;
+    }
+
+    // Current version of each of the given districts that exists
+    public static Map<Integer, Integer> fetchVersions(Connection conn, Collection<Integer> districtIds) throws SQLException {
+        Map<Integer, Integer> versions = new HashMap<>();
+        if (districtIds.isEmpty()) {
+            return versions;
+        }
+        StringBuilder sql = new StringBuilder("SELECT id, version FROM districts WHERE id IN (");
+        for (int i = 0; i < districtIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (int districtId : districtIds) {
+                stmt.setInt(index++, districtId);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    versions.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+        }
+        return versions;
+    }
+
+    // Every district id, in id order
+    public static List<Integer> fetchIds(Connection conn) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT id FROM districts ORDER BY id");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+
+    // Every district with its parties in a single joined query, in district id order
+    public static List<District> fetchAllWithParties(Connection conn) throws SQLException {
+        List<District> districts = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_ALL_WITH_PARTIES);
+             ResultSet rs = stmt.executeQuery()) {
+            District district = null;
+            while (rs.next()) {
+                int districtId = rs.getInt(1);
+                if (district == null || district.getId() != districtId) {
+                    district = mapDistrict(rs, 0);
+                    districts.add(district);
+                }
+                // A district without parties comes back once with NULL party columns
+                rs.getInt(DISTRICT_COLUMN_COUNT + 1);
+                if (rs.wasNull()) {
+                    continue;
+                }
+                district.addParty(mapParty(rs, DISTRICT_COLUMN_COUNT));
+            }
+        }
+        return districts;
+    }
+
+    public static void insertDistrict(Connection conn, District district) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_DISTRICT, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, district.getName());
+            stmt.setInt(2, district.getSeats());
+            stmt.setString(3, district.getAllocationMethod());
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    district.setId(rs.getInt(1));
+                }
+            }
+        }
+    }
+
+    // DISTRICT_COLUMNS starting after the given column
+    static District mapDistrict(ResultSet rs, int offset) throws SQLException {
+        District district = new District();
+        district.setId(rs.getInt(offset + 1));
+        district.setName(rs.getString(offset + 2));
+        district.setSeats(rs.getInt(offset + 3));
+        district.setTotalVotes(rs.getInt(offset + 4));
+        district.setValidVotes(rs.getInt(offset + 5));
+        district.setDisqualifiedVotes(rs.getInt(offset + 6));
+        district.setVoteThreshold(rs.getInt(offset + 7));
+        district.setVersion(rs.getInt(offset + 8));
+        district.setAllocationMethod(rs.getString(offset + 9));
+        return district;
+    }
+
+    // PARTY_COLUMNS starting after the given column
+    static Party mapParty(ResultSet rs, int offset) throws SQLException {
+        Party party = new Party();
+        party.setId(rs.getInt(offset + 1));
+        party.setName(rs.getString(offset + 2));
+        party.setVotes(rs.getInt(offset + 3));
+        party.setQualified(rs.getBoolean(offset + 4));
+        party.setFirstRoundSeats(rs.getInt(offset + 5));
+        party.setSecondRoundSeats(rs.getInt(offset + 6));
+        party.setBonusSeat(rs.getInt(offset + 7));
+        party.setTotalSeats(rs.getInt(offset + 8));
+        return party;
+    }
+
+    // Writes the district and all of its parties as one transaction and advances its version
+    public static void updateDistrict(Connection conn, District district) throws SQLException, StaleDistrictException {
+        conn.setAutoCommit(false);
+        try {
+            writeDistrict(conn, district);
+            conn.commit();
+            district.setVersion(district.getVersion() + 1);
+        } catch (SQLException | StaleDistrictException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    // The district row is only updated if its version still matches the one that was read, so a
+    // concurrent submission is detected, not overwritten. The result snapshot is refreshed in the same
+    // transaction, which the caller owns.
+    public static void writeDistrict(Connection conn, District district) throws SQLException, StaleDistrictException {
+        writeDistrict(conn, district, null);
+    }
+
+    // For transactions that write several districts: the leaderboard changes are added to deltas, which the
+    // caller applies after the last district and before committing
+    public static void writeDistrict(Connection conn, District district, ResultSnapshots.LeaderboardDeltas deltas)
+            throws SQLException, StaleDistrictException {
+        try (PreparedStatement stmt = conn.prepareStatement(UPDATE_DISTRICT)) {
+            stmt.setInt(1, district.getTotalVotes());
+            stmt.setInt(2, district.getValidVotes());
+            stmt.setInt(3, district.getDisqualifiedVotes());
+            stmt.setInt(4, district.getVoteThreshold());
+            stmt.setInt(5, district.getId());
+            stmt.setInt(6, district.getVersion());
+            if (stmt.executeUpdate() == 0) {
+                throw new StaleDistrictException(district.getId());
+            }
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(UPDATE_PARTY)) {
+            for (Party party : district.getParties()) {
+                stmt.setInt(1, party.getVotes());
+                stmt.setBoolean(2, party.isQualified());
+                stmt.setInt(3, party.getFirstRoundSeats());
+                stmt.setInt(4, party.getSecondRoundSeats());
+                stmt.setInt(5, party.getBonusSeat());
+                stmt.setInt(6, party.getTotalSeats());
+                stmt.setInt(7, district.getId());
+                stmt.setInt(8, party.getId());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+
+        ResultSnapshots.write(conn, district, district.getVersion() + 1, deltas);
+    }
+}
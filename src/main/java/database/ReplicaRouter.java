@@ -0,0 +1,210 @@
+package database;
+
+import metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+// Sends result reads to the read replicas configured in db.replicas, round robin. A read that has to reflect
+// a write, either one made through this node in the last db.replica.trackMillis or one the caller names by
+// district version, is checked against the version it returns. An older copy goes to the primary instead and
+// takes the replica out of rotation for db.replica.backoffMillis, as does a replica that cannot be reached.
+public final class ReplicaRouter {
+    public interface Query<T> {
+        T run(Connection conn) throws SQLException;
+    }
+
+    private static final LongAdder REPLICA_READS = Metrics.counter("voting_db_reads_total",
+            "District reads by the database that served them", "target", "replica");
+    private static final LongAdder PRIMARY_READS = Metrics.counter("voting_db_reads_total",
+            "District reads by the database that served them", "target", "primary");
+    private static final LongAdder STALE = Metrics.counter("voting_db_replica_stale_total",
+            "Replica reads that returned an older district version than required");
+    private static final LongAdder FAILURES = Metrics.counter("voting_db_replica_failures_total",
+            "Replica reads that failed and went to the primary");
+
+    private static final AtomicInteger NEXT = new AtomicInteger();
+    // District id -> {version, written at}, for writes this node committed recently
+    private static final Map<Integer, long[]> RECENT_WRITES = new ConcurrentHashMap<>();
+
+    private static volatile Replica[] replicas = new Replica[0];
+    private static volatile long trackMillis = 10_000;
+    private static volatile long backoffMillis = 1_000;
+
+    private ReplicaRouter() {
+    }
+
+    private static final class Replica {
+        final ConnectionPool pool;
+        volatile long backoffUntil;
+
+        Replica(ConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        boolean available(long now) {
+            return now >= backoffUntil;
+        }
+
+        void backOff() {
+            backoffUntil = System.currentTimeMillis() + backoffMillis;
+        }
+    }
+
+    static synchronized void start(List<ConnectionPool> pools, long trackMillis, long backoffMillis) {
+        shutdown();
+        ReplicaRouter.trackMillis = trackMillis;
+        ReplicaRouter.backoffMillis = backoffMillis;
+        Replica[] started = new Replica[pools.size()];
+        for (int i = 0; i < started.length; i++) {
+            ConnectionPool pool = pools.get(i);
+            started[i] = new Replica(pool);
+            String name = pool.getStats().getName();
+            Metrics.gauge("voting_db_pool_active", "Connections currently leased from the pool",
+                    () -> pool.getStats().getActive(), "pool", name);
+            Metrics.gauge("voting_db_pool_idle", "Idle connections in the pool",
+                    () -> pool.getStats().getIdle(), "pool", name);
+        }
+        replicas = started;
+    }
+
+    static synchronized void shutdown() {
+        for (Replica replica : replicas) {
+            replica.pool.shutdown();
+        }
+        replicas = new Replica[0];
+    }
+
+    public static boolean isEnabled() {
+        return replicas.length > 0;
+    }
+
+    // Called once a write is committed, so reads through this node see it even before the replicas do
+    public static void recordWrite(int districtId, int version) {
+        long[] written = {version, System.currentTimeMillis()};
+        RECENT_WRITES.merge(districtId, written, (old, now) -> old[0] > now[0] ? old : now);
+    }
+
+    // Runs the query on a replica whose result is at least minVersion (-1 for none) and at least any recent
+    // write through this node, otherwise on the primary. A null result only counts as current when no
+    // version is required.
+    public static <T> T read(int districtId, int minVersion, Query<T> query, ToIntFunction<T> versionOf) throws SQLException {
+        int required = Math.max(minVersion, recentVersion(districtId));
+        Replica replica = pick();
+        if (replica != null) {
+            try (Connection conn = replica.pool.getConnection()) {
+                T result = query.run(conn);
+                if (required < 0 || (result != null && versionOf.applyAsInt(result) >= required)) {
+                    REPLICA_READS.increment();
+                    return result;
+                }
+                // A missing row may just not exist yet anywhere, so only an older version marks the replica
+                if (result != null) {
+                    STALE.increment();
+                    replica.backOff();
+                }
+            } catch (SQLException e) {
+                FAILURES.increment();
+                replica.backOff();
+            }
+        }
+        PRIMARY_READS.increment();
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            return query.run(conn);
+        }
+    }
+
+    // A connection for reads spanning many districts, from a replica that has every given district at the given
+    // version or later; checking costs one query when any are given
+    public static Connection getReadConnection(Map<Integer, Integer> minVersions) throws SQLException {
+        Replica replica = pick();
+        if (replica != null) {
+            Connection conn = null;
+            try {
+                conn = replica.pool.getConnection();
+                if (current(DistrictRepository.fetchVersions(conn, minVersions.keySet()), minVersions)) {
+                    REPLICA_READS.increment();
+                    return conn;
+                }
+                STALE.increment();
+                replica.backOff();
+                conn.close();
+            } catch (SQLException e) {
+                FAILURES.increment();
+                replica.backOff();
+                if (conn != null) {
+                    conn.close();
+                }
+            }
+        }
+        PRIMARY_READS.increment();
+        return DatabaseUtil.getConnection();
+    }
+
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> pools = new ArrayList<>();
+        for (Replica replica : replicas) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("pool", replica.pool.getStats());
+            entry.put("available", replica.available(now));
+            pools.add(entry);
+        }
+        stats.put("replicas", pools);
+        stats.put("replicaReads", REPLICA_READS.sum());
+        stats.put("primaryReads", PRIMARY_READS.sum());
+        stats.put("stale", STALE.sum());
+        stats.put("failures", FAILURES.sum());
+        stats.put("trackedWrites", RECENT_WRITES.size());
+        return stats;
+    }
+
+    private static Replica pick() {
+        Replica[] current = replicas;
+        long now = System.currentTimeMillis();
+        int start = NEXT.getAndIncrement();
+        for (int i = 0; i < current.length; i++) {
+            Replica replica = current[Math.floorMod(start + i, current.length)];
+            if (replica.available(now)) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    // Whether this node wrote the district at that version or later within the last db.replica.trackMillis
+    public static boolean isRecentLocalWrite(int districtId, int version) {
+        return recentVersion(districtId) >= version;
+    }
+
+    private static int recentVersion(int districtId) {
+        long[] written = RECENT_WRITES.get(districtId);
+        if (written == null) {
+            return -1;
+        }
+        if (System.currentTimeMillis() - written[1] > trackMillis) {
+            RECENT_WRITES.remove(districtId, written);
+            return -1;
+        }
+        return (int) written[0];
+    }
+
+    private static boolean current(Map<Integer, Integer> versions, Map<Integer, Integer> minVersions) {
+        for (Map.Entry<Integer, Integer> required : minVersions.entrySet()) {
+            Integer version = versions.get(required.getKey());
+            if (version == null || version < required.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
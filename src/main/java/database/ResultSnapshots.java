@@ -0,0 +1,268 @@
+package database;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import model.District;
+import model.NationalPartyResult;
+import model.Party;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Materialized read model kept in step with district results. Whenever a district's results are written,
+// the same transaction stores the serialized district and its party ranking in district_results and applies
+// the change in each party's standing to party_leaderboard.
+//
+// Every tally touches the leaderboard rows of the same national parties, so those counters are split into
+// shards by district. Every transaction locks its district rows before any leaderboard row, and leaderboard
+// rows in (shard, party name) order: a transaction writing several districts collects its changes in
+// LeaderboardDeltas and applies them once, after the last district, so it never holds a shard row while
+// waiting on a district row.
+public final class ResultSnapshots {
+    static final int LEADERBOARD_SHARDS = 16;
+
+    private static final Gson GSON = new Gson();
+
+    private ResultSnapshots() {
+    }
+
+    public static final class Snapshot {
+        private final int districtId;
+        private final int version;
+        private final byte[] json;
+        private final long updatedAt;
+
+        Snapshot(int districtId, int version, byte[] json, long updatedAt) {
+            this.districtId = districtId;
+            this.version = version;
+            this.json = json;
+            this.updatedAt = updatedAt;
+        }
+
+        public int getDistrictId() { return districtId; }
+        public int getVersion() { return version; }
+        // UTF-8 JSON, identical to serializing the District
+        public byte[] getJson() { return json; }
+        public long getUpdatedAt() { return updatedAt; }
+    }
+
+    // Returns null when the district has no current snapshot
+    public static Snapshot fetch(Connection conn, int districtId) throws SQLException {
+        String sql = "SELECT version, json, updated_at FROM district_results WHERE district_id = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, districtId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                byte[] json = rs.getBytes(2);
+                return json == null ? null : new Snapshot(districtId, rs.getInt(1), json, rs.getLong(3));
+            }
+        }
+    }
+
+    // National standings, most seats first
+    public static List<NationalPartyResult> fetchLeaderboard(Connection conn, int limit) throws SQLException {
+        String sql = "SELECT party_name, SUM(votes), SUM(seats), SUM(bonus_seats), SUM(districts) FROM party_leaderboard "
+                + "GROUP BY party_name HAVING SUM(districts) > 0 ORDER BY 3 DESC, 2 DESC, 1"
+                + (limit > 0 ? " LIMIT ?" : "");
+        List<NationalPartyResult> leaderboard = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (limit > 0) {
+                stmt.setInt(1, limit);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    NationalPartyResult party = new NationalPartyResult(rs.getString(1));
+                    party.setVotes(rs.getLong(2));
+                    party.setSeats(rs.getInt(3));
+                    party.setBonusSeats(rs.getInt(4));
+                    party.setDistricts(rs.getInt(5));
+                    leaderboard.add(party);
+                }
+            }
+        }
+        return leaderboard;
+    }
+
+    // For changes that alter a district's response without going through a result write, such as a new
+    // district or party. Reads fall back to the district tables until the next write; the ranking is kept for its deltas.
+    // The row is created if missing, so other nodes still see the change through fetchChangedSince.
+    public static void markStale(Connection conn, Collection<Integer> districtIds) throws SQLException {
+        String sql = "INSERT INTO district_results (district_id, version, json, ranking, updated_at) VALUES (?, 0, NULL, '[]', ?) "
+                + "ON DUPLICATE KEY UPDATE json = NULL, updated_at = VALUES(updated_at)";
+        long now = System.currentTimeMillis();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int districtId : districtIds) {
+                stmt.setInt(1, districtId);
+                stmt.setLong(2, now);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    // Adds the current version of every district whose results were written or marked stale at or after
+    // since, and returns the latest change time seen (since itself when nothing changed)
+    public static long fetchChangedSince(Connection conn, long since, Map<Integer, Integer> versions) throws SQLException {
+        String sql = "SELECT r.district_id, d.version, r.updated_at FROM district_results r "
+                + "JOIN districts d ON d.id = r.district_id WHERE r.updated_at >= ?";
+        long latest = since;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, since);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    versions.put(rs.getInt(1), rs.getInt(2));
+                    latest = Math.max(latest, rs.getLong(3));
+                }
+            }
+        }
+        return latest;
+    }
+
+    // Time of the most recent result change, or 0 when there are no results yet
+    public static long fetchLatestChange(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT MAX(updated_at) FROM district_results");
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    // Leaderboard changes of one transaction, merged per shard and party; apply before committing
+    public static final class LeaderboardDeltas {
+        // Shard -> party name -> {votes, seats, bonusSeats, districts}
+        private final Map<Integer, Map<String, long[]>> shards = new TreeMap<>();
+
+        void add(int shard, Map<String, int[]> previous, Map<String, int[]> current) {
+            Map<String, long[]> deltas = shards.computeIfAbsent(shard, key -> new TreeMap<>());
+            for (Map.Entry<String, int[]> entry : current.entrySet()) {
+                int[] before = previous.get(entry.getKey());
+                int[] after = entry.getValue();
+                merge(deltas, entry.getKey(), before == null
+                        ? new int[]{after[0], after[1], after[2], 1}
+                        : new int[]{after[0] - before[0], after[1] - before[1], after[2] - before[2], 0});
+            }
+            for (Map.Entry<String, int[]> entry : previous.entrySet()) {
+                if (!current.containsKey(entry.getKey())) {
+                    int[] before = entry.getValue();
+                    merge(deltas, entry.getKey(), new int[]{-before[0], -before[1], -before[2], -1});
+                }
+            }
+        }
+
+        private static void merge(Map<String, long[]> deltas, String name, int[] delta) {
+            long[] total = deltas.computeIfAbsent(name, key -> new long[4]);
+            for (int i = 0; i < total.length; i++) {
+                total[i] += delta[i];
+            }
+        }
+
+        public void apply(Connection conn) throws SQLException {
+            String sql = "INSERT INTO party_leaderboard (party_name, shard, votes, seats, bonus_seats, districts) VALUES (?, ?, ?, ?, ?, ?) "
+                    + "ON DUPLICATE KEY UPDATE votes = votes + VALUES(votes), seats = seats + VALUES(seats), "
+                    + "bonus_seats = bonus_seats + VALUES(bonus_seats), districts = districts + VALUES(districts)";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                boolean batched = false;
+                for (Map.Entry<Integer, Map<String, long[]>> shard : shards.entrySet()) {
+                    for (Map.Entry<String, long[]> entry : shard.getValue().entrySet()) {
+                        long[] delta = entry.getValue();
+                        if (delta[0] == 0 && delta[1] == 0 && delta[2] == 0 && delta[3] == 0) {
+                            continue;
+                        }
+                        stmt.setString(1, entry.getKey());
+                        stmt.setInt(2, shard.getKey());
+                        stmt.setLong(3, delta[0]);
+                        stmt.setInt(4, (int) delta[1]);
+                        stmt.setInt(5, (int) delta[2]);
+                        stmt.setInt(6, (int) delta[3]);
+                        stmt.addBatch();
+                        batched = true;
+                    }
+                }
+                if (batched) {
+                    stmt.executeBatch();
+                }
+            }
+            shards.clear();
+        }
+    }
+
+    // Caller owns the transaction and has already updated the district row, which serializes this per district.
+    // The leaderboard changes go to deltas when given, and are applied straight away otherwise.
+    static void write(Connection conn, District district, int committedVersion, LeaderboardDeltas deltas)
+            throws SQLException {
+        Map<String, int[]> previous = readRanking(conn, district.getId());
+        Map<String, int[]> current = ranking(district);
+
+        JsonObject tree = GSON.toJsonTree(district).getAsJsonObject();
+        tree.addProperty("version", committedVersion);
+        String sql = "INSERT INTO district_results (district_id, version, json, ranking, updated_at) VALUES (?, ?, ?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE version = VALUES(version), json = VALUES(json), ranking = VALUES(ranking), "
+                + "updated_at = VALUES(updated_at)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, district.getId());
+            stmt.setInt(2, committedVersion);
+            stmt.setBytes(3, GSON.toJson(tree).getBytes(StandardCharsets.UTF_8));
+            stmt.setString(4, GSON.toJson(current.entrySet().stream()
+                    .map(e -> new Object[]{e.getKey(), e.getValue()[0], e.getValue()[1], e.getValue()[2]})
+                    .toArray()));
+            stmt.setLong(5, System.currentTimeMillis());
+            stmt.executeUpdate();
+        }
+
+        if (deltas != null) {
+            deltas.add(district.getId() % LEADERBOARD_SHARDS, previous, current);
+        } else {
+            LeaderboardDeltas own = new LeaderboardDeltas();
+            own.add(district.getId() % LEADERBOARD_SHARDS, previous, current);
+            own.apply(conn);
+        }
+    }
+
+    private static Map<String, int[]> readRanking(Connection conn, int districtId) throws SQLException {
+        Map<String, int[]> ranking = new LinkedHashMap<>();
+        // A locking read sees the latest ranking even if the transaction's snapshot predates it
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT ranking FROM district_results WHERE district_id = ? FOR UPDATE")) {
+            stmt.setInt(1, districtId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next() && rs.getString(1) != null) {
+                    // [[name, votes, seats, bonusSeats], ...]
+                    for (Object[] row : GSON.fromJson(rs.getString(1), Object[][].class)) {
+                        ranking.put((String) row[0], new int[]{
+                                ((Number) row[1]).intValue(), ((Number) row[2]).intValue(), ((Number) row[3]).intValue()});
+                    }
+                }
+            }
+        }
+        return ranking;
+    }
+
+    // Party name -> {votes, seats, bonusSeats}, most seats first; same-named parties are merged as nationally
+    private static Map<String, int[]> ranking(District district) {
+        Map<String, int[]> byName = new LinkedHashMap<>();
+        for (Party party : district.getParties()) {
+            int[] standing = byName.computeIfAbsent(party.getName(), name -> new int[3]);
+            standing[0] += party.getVotes();
+            standing[1] += party.getTotalSeats();
+            standing[2] += party.getBonusSeat();
+        }
+        List<Map.Entry<String, int[]>> entries = new ArrayList<>(byName.entrySet());
+        entries.sort((a, b) -> a.getValue()[1] != b.getValue()[1]
+                ? Integer.compare(b.getValue()[1], a.getValue()[1])
+                : Integer.compare(b.getValue()[0], a.getValue()[0]));
+        Map<String, int[]> ranking = new LinkedHashMap<>();
+        for (Map.Entry<String, int[]> entry : entries) {
+            ranking.put(entry.getKey(), entry.getValue());
+        }
+        return ranking;
+    }
+}
@@ -0,0 +1,169 @@
+package database;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Applies the versioned scripts under db/migration in order and records each one in schema_version.
+// Schema changes that were applied by hand before migrations existed are adopted rather than failed on.
+public final class SchemaMigrator {
+    // Scripts cannot be listed reliably from inside a war, so each one is registered here
+    private static final String[] SCRIPTS = {
+            "V1__baseline.sql",
+            "V2__district_version_and_method.sql",
+            "V3__party_indexes.sql",
+            "V4__vote_batches.sql",
+            "V5__result_snapshots.sql",
+            "V6__cluster_sync.sql",
+    };
+
+    // MySQL errors for a table, column or index that already exists
+    private static final int ER_TABLE_EXISTS = 1050;
+    private static final int ER_DUP_FIELDNAME = 1060;
+    private static final int ER_DUP_KEYNAME = 1061;
+
+    private SchemaMigrator() {
+    }
+
+    // Returns the number of scripts applied
+    public static int migrate(Connection conn) throws SQLException, IOException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(true);
+        boolean locked = acquireLock(conn);
+        try {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (version INT NOT NULL PRIMARY KEY, "
+                        + "script VARCHAR(255) NOT NULL, checksum BIGINT NOT NULL, "
+                        + "applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+            }
+            Map<Integer, Long> applied = appliedVersions(conn);
+
+            int count = 0;
+            for (String script : SCRIPTS) {
+                int version = Integer.parseInt(script.substring(1, script.indexOf("__")));
+                String sql = load(script);
+                long checksum = checksum(sql);
+                Long recorded = applied.get(version);
+                if (recorded != null) {
+                    if (recorded != checksum) {
+                        throw new SQLException("Migration " + script + " was changed after it was applied");
+                    }
+                    continue;
+                }
+                for (String statement : split(sql)) {
+                    execute(conn, script, statement);
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO schema_version (version, script, checksum) VALUES (?, ?, ?)")) {
+                    stmt.setInt(1, version);
+                    stmt.setString(2, script);
+                    stmt.setLong(3, checksum);
+                    stmt.executeUpdate();
+                }
+                count++;
+            }
+            return count;
+        } finally {
+            if (locked) {
+                releaseLock(conn);
+            }
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static Map<Integer, Long> appliedVersions(Connection conn) throws SQLException {
+        Map<Integer, Long> applied = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) {
+                applied.put(rs.getInt(1), rs.getLong(2));
+            }
+        }
+        return applied;
+    }
+
+    private static void execute(Connection conn, String script, String statement) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(statement);
+        } catch (SQLException e) {
+            int code = e.getErrorCode();
+            if (code != ER_TABLE_EXISTS && code != ER_DUP_FIELDNAME && code != ER_DUP_KEYNAME) {
+                throw new SQLException("Migration " + script + " failed: " + e.getMessage(), e.getSQLState(), code, e);
+            }
+        }
+    }
+
+    // Several nodes may start at once; on databases without GET_LOCK the migration runs unguarded
+    private static boolean acquireLock(Connection conn) {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT GET_LOCK('voting_system_migrations', 60)")) {
+            return rs.next() && rs.getInt(1) == 1;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void releaseLock(Connection conn) {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("SELECT RELEASE_LOCK('voting_system_migrations')");
+        } catch (SQLException ignored) {
+            // Released anyway when the session ends
+        }
+    }
+
+    private static String load(String script) throws IOException {
+        try (InputStream in = SchemaMigrator.class.getResourceAsStream("/db/migration/" + script)) {
+            if (in == null) {
+                throw new IOException("Migration " + script + " is missing from the classpath");
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    // Statements end with ';' at the end of a line; lines starting with -- are comments
+    private static List<String> split(String sql) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : sql.split("\r?\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                continue;
+            }
+            if (trimmed.endsWith(";")) {
+                current.append(trimmed, 0, trimmed.length() - 1);
+                statements.add(current.toString().trim());
+                current.setLength(0);
+            } else {
+                current.append(trimmed).append('\n');
+            }
+        }
+        if (current.toString().trim().length() > 0) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
+    }
+
+    // Line endings are normalized so a checkout on another platform does not look like an edit
+    private static long checksum(String sql) {
+        CRC32 crc = new CRC32();
+        crc.update(sql.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
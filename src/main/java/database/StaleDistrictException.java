@@ -0,0 +1,14 @@
+package database;
+
+import java.io.IOException;
+
+public class StaleDistrictException extends IOException {
+    private final int districtId;
+
+    public StaleDistrictException(int districtId) {
+        super("District " + districtId + " was modified by a concurrent submission; reload and retry");
+        this.districtId = districtId;
+    }
+
+    public int getDistrictId() { return districtId; }
+}
@@ -0,0 +1,90 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Log-linear latency histogram in the style of HdrHistogram: values are kept in microseconds, exact below
+// 32 us and in 16 sub-buckets per power of two above that (about 6% relative error). Recording is a few
+// atomic increments with no locks and no allocation.
+public class LatencyHistogram {
+    private static final int LINEAR_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40; // about 12 days in microseconds
+    private static final int BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - 5 + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucketOf(nanos / 1000));
+        count.increment();
+        sumNanos.add(nanos);
+        long prev;
+        while (nanos > (prev = maxNanos.get()) && !maxNanos.compareAndSet(prev, nanos)) {
+            // retry until the maximum is published
+        }
+    }
+
+    // Records the time since startNanos and returns the current System.nanoTime()
+    public long recordSince(long startNanos) {
+        long now = System.nanoTime();
+        record(now - startNanos);
+        return now;
+    }
+
+    public long getCount() { return count.sum(); }
+
+    public double getSumSeconds() { return sumNanos.sum() / 1e9; }
+
+    public double getMaxSeconds() { return maxNanos.get() / 1e9; }
+
+    // Upper bound of the bucket holding the given quantile, in seconds
+    public double quantileSeconds(double quantile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0) {
+                return Math.min(upperBoundMicros(i) / 1e6, getMaxSeconds());
+            }
+        }
+        return getMaxSeconds();
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 5) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundMicros(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket + 1;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 5;
+        int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+}
@@ -0,0 +1,128 @@
+package metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+// In-process metrics registry rendered in the Prometheus text exposition format. Look metrics up once and
+// keep the reference on hot paths; lookups concatenate the label string.
+public final class Metrics {
+    private static final Map<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private Metrics() {
+    }
+
+    public static LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) family(name, help, "summary")
+                .series.computeIfAbsent(renderLabels(labels), key -> new LatencyHistogram());
+    }
+
+    public static LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) family(name, help, "counter")
+                .series.computeIfAbsent(renderLabels(labels), key -> new LongAdder());
+    }
+
+    // A counter whose value is read from an existing source on each scrape
+    public static void functionCounter(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "counter").series.put(renderLabels(labels), value);
+    }
+
+    public static void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").series.put(renderLabels(labels), value);
+    }
+
+    public static void writePrometheus(Writer out) throws IOException {
+        StringBuilder line = new StringBuilder(128);
+        for (Map.Entry<String, Family> entry : FAMILIES.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.write("# HELP " + name + " " + family.help + "\n");
+            out.write("# TYPE " + name + " " + family.type + "\n");
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                Object metric = series.getValue();
+                if (metric instanceof LatencyHistogram) {
+                    LatencyHistogram histogram = (LatencyHistogram) metric;
+                    for (double quantile : QUANTILES) {
+                        String quantileLabel = "quantile=\"" + quantile + "\"";
+                        sample(out, line, name, labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel,
+                                histogram.quantileSeconds(quantile));
+                    }
+                    sample(out, line, name + "_sum", labels, histogram.getSumSeconds());
+                    sample(out, line, name + "_count", labels, histogram.getCount());
+                } else if (metric instanceof LongAdder) {
+                    sample(out, line, name, labels, ((LongAdder) metric).sum());
+                } else {
+                    sample(out, line, name, labels, ((DoubleSupplier) metric).getAsDouble());
+                }
+            }
+        }
+    }
+
+    private static void sample(Writer out, StringBuilder line, String name, String labels, double value) throws IOException {
+        line.setLength(0);
+        line.append(name);
+        if (!labels.isEmpty()) {
+            line.append('{').append(labels).append('}');
+        }
+        line.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            line.append((long) value);
+        } else {
+            line.append(value);
+        }
+        line.append('\n');
+        out.write(line.toString());
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family family = FAMILIES.computeIfAbsent(name, key -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static String renderLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder rendered = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                rendered.append(',');
+            }
+            rendered.append(labels[i]).append("=\"");
+            String value = labels[i + 1] == null ? "" : labels[i + 1];
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    rendered.append('\\').append(c);
+                } else if (c == '\n') {
+                    rendered.append("\\n");
+                } else {
+                    rendered.append(c);
+                }
+            }
+            rendered.append('"');
+        }
+        return rendered.toString();
+    }
+
+    private static final class Family {
+        final String help;
+        final String type;
+        final Map<String, Object> series = new ConcurrentHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package metrics;
+
+// Time spent per phase of one endpoint: database, computation and serialization
+public class Phases {
+    private static final String HELP = "Time spent in each phase of request handling";
+
+    private final LatencyHistogram db;
+    private final LatencyHistogram compute;
+    private final LatencyHistogram serialize;
+
+    public Phases(String endpoint, String method) {
+        db = Metrics.histogram("voting_phase_seconds", HELP, "endpoint", endpoint, "method", method, "phase", "db");
+        compute = Metrics.histogram("voting_phase_seconds", HELP, "endpoint", endpoint, "method", method, "phase", "compute");
+        serialize = Metrics.histogram("voting_phase_seconds", HELP, "endpoint", endpoint, "method", method, "phase", "serialize");
+    }
+
+    // Each records the time since startNanos and returns now, so calls can be chained through a request
+    public long db(long startNanos) { return db.recordSince(startNanos); }
+
+    public long compute(long startNanos) { return compute.recordSince(startNanos); }
+
+    public long serialize(long startNanos) { return serialize.recordSince(startNanos); }
+}
@@ -11,6 +11,8 @@ public class District {
     private int validVotes;
     private int disqualifiedVotes;
     private int voteThreshold;
+    private int version;
+    private String allocationMethod;
     private List<Party> parties;
 
     public District() {
@@ -43,6 +45,14 @@ public class District {
         this.voteThreshold = voteThreshold;
     }
 
+    public int getVersion() { return version; }
+    public void setVersion(int version) { this.version = version; }
+
+    public String getAllocationMethod() { return allocationMethod; }
+    public void setAllocationMethod(String allocationMethod) {
+        this.allocationMethod = allocationMethod;
+    }
+
     public List<Party> getParties() { return parties; }
     public void setParties(List<Party> parties) { this.parties = parties; }
 
@@ -0,0 +1,39 @@
+package model;
+
+public class NationalPartyResult {
+    private String name;
+    private long votes;
+    private int seats;
+    private int bonusSeats;
+    private int districts;
+
+    public NationalPartyResult() {
+    }
+
+    public NationalPartyResult(String name) {
+        this.name = name;
+    }
+
+    // Getters and setters
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public long getVotes() { return votes; }
+    public void setVotes(long votes) { this.votes = votes; }
+
+    public int getSeats() { return seats; }
+    public void setSeats(int seats) { this.seats = seats; }
+
+    public int getBonusSeats() { return bonusSeats; }
+    public void setBonusSeats(int bonusSeats) { this.bonusSeats = bonusSeats; }
+
+    public int getDistricts() { return districts; }
+    public void setDistricts(int districts) { this.districts = districts; }
+
+    public void add(NationalPartyResult other) {
+        this.votes += other.votes;
+        this.seats += other.seats;
+        this.bonusSeats += other.bonusSeats;
+        this.districts += other.districts;
+    }
+}
@@ -0,0 +1,37 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class NationalResult {
+    private int districtCount;
+    private int seats;
+    private long totalVotes;
+    private long validVotes;
+    private List<NationalPartyResult> parties;
+    private List<District> districts;
+
+    public NationalResult() {
+        this.parties = new ArrayList<>();
+        this.districts = new ArrayList<>();
+    }
+
+    // Getters and setters
+    public int getDistrictCount() { return districtCount; }
+    public void setDistrictCount(int districtCount) { this.districtCount = districtCount; }
+
+    public int getSeats() { return seats; }
+    public void setSeats(int seats) { this.seats = seats; }
+
+    public long getTotalVotes() { return totalVotes; }
+    public void setTotalVotes(long totalVotes) { this.totalVotes = totalVotes; }
+
+    public long getValidVotes() { return validVotes; }
+    public void setValidVotes(long validVotes) { this.validVotes = validVotes; }
+
+    public List<NationalPartyResult> getParties() { return parties; }
+    public void setParties(List<NationalPartyResult> parties) { this.parties = parties; }
+
+    public List<District> getDistricts() { return districts; }
+    public void setDistricts(List<District> districts) { this.districts = districts; }
+}
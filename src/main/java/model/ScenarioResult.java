@@ -0,0 +1,57 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// National outcome of one simulated scenario next to the unchanged baseline
+public class ScenarioResult {
+    private String name;
+    private List<Integer> changedDistricts = new ArrayList<>();
+    private List<PartyOutcome> parties = new ArrayList<>();
+
+    public ScenarioResult() {
+    }
+
+    public ScenarioResult(String name) {
+        this.name = name;
+    }
+
+    // Getters and setters
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    // Ids of the districts whose seat allocation differs from the baseline
+    public List<Integer> getChangedDistricts() { return changedDistricts; }
+    public void setChangedDistricts(List<Integer> changedDistricts) { this.changedDistricts = changedDistricts; }
+
+    public List<PartyOutcome> getParties() { return parties; }
+    public void setParties(List<PartyOutcome> parties) { this.parties = parties; }
+
+    public static class PartyOutcome {
+        private String name;
+        private long baselineVotes;
+        private long votes;
+        private int baselineSeats;
+        private int seats;
+        private int seatDelta;
+
+        public PartyOutcome() {
+        }
+
+        public PartyOutcome(String name, long baselineVotes, long votes, int baselineSeats, int seats) {
+            this.name = name;
+            this.baselineVotes = baselineVotes;
+            this.votes = votes;
+            this.baselineSeats = baselineSeats;
+            this.seats = seats;
+            this.seatDelta = seats - baselineSeats;
+        }
+
+        public String getName() { return name; }
+        public long getBaselineVotes() { return baselineVotes; }
+        public long getVotes() { return votes; }
+        public int getBaselineSeats() { return baselineSeats; }
+        public int getSeats() { return seats; }
+        public int getSeatDelta() { return seatDelta; }
+    }
+}
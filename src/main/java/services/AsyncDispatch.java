@@ -0,0 +1,491 @@
+package services;
+
+import metrics.Metrics;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Runs blocking request handling off the container thread. On a runtime with virtual threads each request
+// gets one; otherwise a bounded pool is used and refuses work with 503 once its queue is full. Either way
+// the connection pool still bounds how many requests talk to the database at once.
+//
+// The container recycles the request and response as soon as the async cycle completes, so only a request
+// whose handler has not started is answered by a timeout (503) or ended by an error straight away. Once the
+// handler runs, a timeout or error waits up to async.timeoutGraceMillis for it to finish, so the handler's own
+// answer is sent and a write it commits is not reported as a failure. A handler still running after that is
+// cut off: the request is answered with 503 and whatever the handler still writes is discarded, so a slow
+// handler cannot hold container threads without bound.
+final class AsyncDispatch {
+    interface Handler {
+        void handle(HttpServletRequest request, HttpServletResponse response) throws IOException;
+    }
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("async.enabled", "true"));
+    private static final long TIMEOUT_MILLIS = Long.getLong("async.timeoutMillis", 30_000L);
+    private static final long GRACE_MILLIS = Long.getLong("async.timeoutGraceMillis", 10_000L);
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = createExecutor();
+    private static final boolean VIRTUAL = !(EXECUTOR instanceof ThreadPoolExecutor);
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    // Answered without running the handler
+    private static final int ABANDONED = 2;
+
+    private static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+    private static final LongAdder REJECTED = Metrics.counter("voting_async_rejected_total",
+            "Requests refused because the request executor was saturated");
+    private static final LongAdder TIMEOUTS = Metrics.counter("voting_async_timeouts_total",
+            "Async requests that hit the async timeout");
+    private static final LongAdder CUT_OFF = Metrics.counter("voting_async_cut_off_total",
+            "Async requests answered with 503 while their handler was still running");
+
+    static {
+        Metrics.gauge("voting_async_in_flight", "Requests being handled off the container thread", IN_FLIGHT::get);
+    }
+
+    private AsyncDispatch() {
+    }
+
+    static void run(HttpServletRequest request, HttpServletResponse response, Handler handler) throws IOException {
+        // Requests that passed through a filter without async support are handled in place
+        if (!ENABLED || !request.isAsyncSupported()) {
+            handler.handle(request, response);
+            return;
+        }
+
+        AsyncContext context = request.startAsync(request, response);
+        context.setTimeout(TIMEOUT_MILLIS);
+        AtomicInteger state = new AtomicInteger(QUEUED);
+        CountDownLatch handled = new CountDownLatch(1);
+        DetachableResponse handlerResponse = new DetachableResponse(response);
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                TIMEOUTS.increment();
+                if (state.compareAndSet(QUEUED, ABANDONED) || !await(handled)) {
+                    cutOff(event.getAsyncContext(), "Request timed out");
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                if (state.compareAndSet(QUEUED, ABANDONED)) {
+                    event.getAsyncContext().complete();
+                } else if (!await(handled)) {
+                    cutOff(event.getAsyncContext(), "Request failed");
+                }
+            }
+
+            // The handler keeps running but no longer reaches the response the container is about to recycle
+            private void cutOff(AsyncContext asyncContext, String message) {
+                if (!handlerResponse.detach()) {
+                    return;
+                }
+                if (state.get() == RUNNING) {
+                    CUT_OFF.increment();
+                }
+                respond(asyncContext, HttpServletResponse.SC_SERVICE_UNAVAILABLE, message);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        try {
+            EXECUTOR.execute(() -> {
+                // Once the timeout has answered, the request belongs to the container again
+                if (!state.compareAndSet(QUEUED, RUNNING)) {
+                    return;
+                }
+                IN_FLIGHT.incrementAndGet();
+                try {
+                    handler.handle(request, handlerResponse);
+                } catch (Exception e) {
+                    if (!handlerResponse.isCommitted()) {
+                        handlerResponse.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    }
+                } finally {
+                    IN_FLIGHT.decrementAndGet();
+                    // Completing before releasing a waiting timeout or error listener, so the container
+                    // finishes the handler's answer instead of replacing it
+                    handlerResponse.complete(context);
+                    handled.countDown();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            REJECTED.increment();
+            if (state.compareAndSet(QUEUED, ABANDONED)) {
+                response.setHeader("Retry-After", "1");
+                respond(context, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server is busy, retry later");
+            }
+        }
+    }
+
+    static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", ENABLED);
+        stats.put("virtualThreads", VIRTUAL);
+        stats.put("timeoutMillis", TIMEOUT_MILLIS);
+        stats.put("timeoutGraceMillis", GRACE_MILLIS);
+        stats.put("inFlight", IN_FLIGHT.get());
+        if (EXECUTOR instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) EXECUTOR;
+            stats.put("poolSize", pool.getMaximumPoolSize());
+            stats.put("queued", pool.getQueue().size());
+        }
+        stats.put("rejected", REJECTED.sum());
+        stats.put("timeouts", TIMEOUTS.sum());
+        stats.put("cutOff", CUT_OFF.sum());
+        return stats;
+    }
+
+    static void shutdown() {
+        EXECUTOR.shutdown();
+        try {
+            EXECUTOR.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Holds a container thread while the handler finishes, for at most the grace period. Returns false if the
+    // handler is still running.
+    private static boolean await(CountDownLatch handled) {
+        try {
+            return handled.await(GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void respond(AsyncContext context, int status, String message) {
+        try {
+            HttpServletResponse response = (HttpServletResponse) context.getResponse();
+            if (!response.isCommitted()) {
+                response.resetBuffer();
+                response.setStatus(status);
+                response.getWriter().write("Error: " + message);
+            }
+        } catch (IOException | IllegalStateException ignored) {
+            // The client is gone or the response was already written
+        } finally {
+            context.complete();
+        }
+    }
+
+    // What the handler writes through. Once detached, changes to the status, headers and body are dropped,
+    // as the real response has been answered and handed back to the container. Writes and detach() take the
+    // same lock, so no write reaches the response after the cut-off.
+    private static final class DetachableResponse extends HttpServletResponseWrapper {
+        private boolean detached;
+        private boolean completed;
+        private PrintWriter writer;
+        private ServletOutputStream out;
+
+        DetachableResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        // Returns false if the handler completed the request first
+        synchronized boolean detach() {
+            if (completed) {
+                return false;
+            }
+            detached = true;
+            return true;
+        }
+
+        // Unless cut off, which already completed the request
+        synchronized void complete(AsyncContext context) {
+            if (!detached) {
+                completed = true;
+                context.complete();
+            }
+        }
+
+        @Override
+        public synchronized boolean isCommitted() {
+            return detached || super.isCommitted();
+        }
+
+        @Override
+        public synchronized void setStatus(int sc) {
+            if (!detached) {
+                super.setStatus(sc);
+            }
+        }
+
+        @Override
+        public synchronized void sendError(int sc, String msg) throws IOException {
+            if (!detached) {
+                super.sendError(sc, msg);
+            }
+        }
+
+        @Override
+        public synchronized void sendError(int sc) throws IOException {
+            if (!detached) {
+                super.sendError(sc);
+            }
+        }
+
+        @Override
+        public synchronized void sendRedirect(String location) throws IOException {
+            if (!detached) {
+                super.sendRedirect(location);
+            }
+        }
+
+        @Override
+        public synchronized void setHeader(String name, String value) {
+            if (!detached) {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public synchronized void addHeader(String name, String value) {
+            if (!detached) {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public synchronized void setDateHeader(String name, long date) {
+            if (!detached) {
+                super.setDateHeader(name, date);
+            }
+        }
+
+        @Override
+        public synchronized void addDateHeader(String name, long date) {
+            if (!detached) {
+                super.addDateHeader(name, date);
+            }
+        }
+
+        @Override
+        public synchronized void setIntHeader(String name, int value) {
+            if (!detached) {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public synchronized void addIntHeader(String name, int value) {
+            if (!detached) {
+                super.addIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public synchronized void addCookie(Cookie cookie) {
+            if (!detached) {
+                super.addCookie(cookie);
+            }
+        }
+
+        @Override
+        public synchronized void setContentType(String type) {
+            if (!detached) {
+                super.setContentType(type);
+            }
+        }
+
+        @Override
+        public synchronized void setCharacterEncoding(String charset) {
+            if (!detached) {
+                super.setCharacterEncoding(charset);
+            }
+        }
+
+        @Override
+        public synchronized void setContentLength(int len) {
+            if (!detached) {
+                super.setContentLength(len);
+            }
+        }
+
+        @Override
+        public synchronized void setContentLengthLong(long len) {
+            if (!detached) {
+                super.setContentLengthLong(len);
+            }
+        }
+
+        @Override
+        public synchronized void setBufferSize(int size) {
+            if (!detached) {
+                super.setBufferSize(size);
+            }
+        }
+
+        @Override
+        public synchronized void flushBuffer() throws IOException {
+            if (!detached) {
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public synchronized void resetBuffer() {
+            if (!detached) {
+                super.resetBuffer();
+            }
+        }
+
+        @Override
+        public synchronized void reset() {
+            if (!detached) {
+                super.reset();
+            }
+        }
+
+        @Override
+        public synchronized PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                Writer target = detached ? null : super.getWriter();
+                writer = new PrintWriter(new Writer() {
+                    @Override
+                    public void write(char[] buffer, int offset, int length) throws IOException {
+                        synchronized (DetachableResponse.this) {
+                            if (!detached) {
+                                target.write(buffer, offset, length);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        synchronized (DetachableResponse.this) {
+                            if (!detached) {
+                                target.flush();
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        synchronized (DetachableResponse.this) {
+                            if (!detached) {
+                                target.close();
+                            }
+                        }
+                    }
+                });
+            }
+            return writer;
+        }
+
+        @Override
+        public synchronized ServletOutputStream getOutputStream() throws IOException {
+            if (out == null) {
+                ServletOutputStream target = detached ? null : super.getOutputStream();
+                out = new ServletOutputStream() {
+                    @Override
+                    public boolean isReady() {
+                        synchronized (DetachableResponse.this) {
+                            return detached || target.isReady();
+                        }
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        synchronized (DetachableResponse.this) {
+                            if (!detached) {
+                                target.setWriteListener(listener);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void write(int b) throws IOException {
+                        synchronized (DetachableResponse.this) {
+                            if (!detached) {
+                                target.write(b);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) throws IOException {
+                        synchronized (DetachableResponse.this) {
+                            if (!detached) {
+                                target.write(bytes, offset, length);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        synchronized (DetachableResponse.this) {
+                            if (!detached) {
+                                target.flush();
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        synchronized (DetachableResponse.this) {
+                            if (!detached) {
+                                target.close();
+                            }
+                        }
+                    }
+                };
+            }
+            return out;
+        }
+    }
+
+    // The build targets Java 8, so virtual threads (Java 21+) are looked up reflectively
+    private static ExecutorService createExecutor() {
+        if (Boolean.parseBoolean(System.getProperty("async.virtualThreads", "true"))) {
+            try {
+                return (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Older runtime; fall back to platform threads
+            }
+        }
+        int poolSize = Integer.getInteger("async.poolSize", 64);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Integer.getInteger("async.queueSize", 1000)), r -> {
+                    Thread t = new Thread(r, "request-worker-" + THREAD_COUNT.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
@@ -0,0 +1,259 @@
+package services;
+
+import model.District;
+import model.NationalPartyResult;
+import model.NationalResult;
+import model.Party;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Compact binary encoding of results for high-volume consumers, chosen with Accept: application/vnd.voting.results.
+// Fields are written one by one from the model getters, without reflection or boxing, into a pooled buffer
+// that is returned on close for a later response to reuse.
+//
+// A body is the bytes 'V' 'R', the format version (1), a sequence of records and a 0 byte. Each record is a tag
+// byte followed by its fields. Integers are unsigned LEB128 varints; strings are a varint byte length followed
+// by UTF-8.
+//
+//   1 district  id, version, seats, totalVotes, validVotes, disqualifiedVotes, voteThreshold, method, name,
+//               party count, then per party: id, name, votes, qualified (0 or 1), firstRoundSeats,
+//               secondRoundSeats, bonusSeat, totalSeats
+//   2 national  districtCount, seats, totalVotes, validVotes; followed by its party and district records
+//   3 standing  name, votes, seats, bonusSeats, districts
+//
+// method is 1 BONUS_SEAT, 2 DHONDT, 3 SAINTE_LAGUE, 4 HARE, or 0 followed by the method name as a string.
+// Fields are never added to a record within a format version.
+final class BinaryResults implements AutoCloseable {
+    static final String MEDIA_TYPE = "application/vnd.voting.results";
+    static final int FORMAT_VERSION = 1;
+    // Streamed responses are handed to the output stream in chunks of about this size
+    static final int FLUSH_BYTES = 8192;
+
+    private static final int TAG_END = 0;
+    private static final int TAG_DISTRICT = 1;
+    private static final int TAG_NATIONAL = 2;
+    private static final int TAG_STANDING = 3;
+    private static final String[] METHODS = {null, "BONUS_SEAT", "DHONDT", "SAINTE_LAGUE", "HARE"};
+
+    // A buffer that grew past this for one large response is not kept for the next one
+    private static final int MAX_RETAINED_BYTES = 1 << 20;
+    // A few slots picked by thread id instead of a ThreadLocal, which only pays off on long-lived platform
+    // threads: a virtual thread, or any thread per request, would allocate a buffer every time and keep it
+    // until the thread ends. Buffers beyond the slots are allocated per response and dropped.
+    private static final AtomicReferenceArray<BinaryResults> POOL = new AtomicReferenceArray<>(
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1);
+
+    private byte[] buffer = new byte[FLUSH_BYTES * 2];
+    private int size;
+
+    private BinaryResults() {
+    }
+
+    // Starts a new body in a pooled buffer; close it once the body has been written out
+    static BinaryResults begin() {
+        BinaryResults out = POOL.getAndSet(slot(), null);
+        if (out == null) {
+            out = new BinaryResults();
+        }
+        out.size = 0;
+        out.ensure(3);
+        out.buffer[out.size++] = 'V';
+        out.buffer[out.size++] = 'R';
+        out.buffer[out.size++] = FORMAT_VERSION;
+        return out;
+    }
+
+    @Override
+    public void close() {
+        if (buffer.length <= MAX_RETAINED_BYTES) {
+            POOL.compareAndSet(slot(), null, this);
+        }
+    }
+
+    private static int slot() {
+        return (int) Thread.currentThread().getId() & (POOL.length() - 1);
+    }
+
+    BinaryResults end() {
+        ensure(1);
+        buffer[size++] = TAG_END;
+        return this;
+    }
+
+    byte[] array() {
+        return buffer;
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte[] toByteArray() {
+        byte[] copy = new byte[size];
+        System.arraycopy(buffer, 0, copy, 0, size);
+        return copy;
+    }
+
+    // Writes what has been encoded so far and empties the buffer
+    void flushTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+        size = 0;
+    }
+
+    BinaryResults district(District district) {
+        List<Party> parties = district.getParties();
+        district(district.getId(), district.getVersion(), district.getSeats(), district.getTotalVotes(),
+                district.getValidVotes(), district.getDisqualifiedVotes(), district.getVoteThreshold(),
+                district.getAllocationMethod(), district.getName(), parties == null ? 0 : parties.size());
+        for (int i = 0; parties != null && i < parties.size(); i++) {
+            Party party = parties.get(i);
+            writeInt(party.getId());
+            writeString(party.getName());
+            writeInt(party.getVotes());
+            writeInt(party.isQualified() ? 1 : 0);
+            writeInt(party.getFirstRoundSeats());
+            writeInt(party.getSecondRoundSeats());
+            writeInt(party.getBonusSeat());
+            writeInt(party.getTotalSeats());
+        }
+        return this;
+    }
+
+    // For callers that have the fields but no District; exactly partyCount parties must follow
+    BinaryResults district(int id, int version, int seats, int totalVotes, int validVotes, int disqualifiedVotes,
+                           int voteThreshold, String method, String name, int partyCount) {
+        writeTag(TAG_DISTRICT);
+        writeInt(id);
+        writeInt(version);
+        writeInt(seats);
+        writeInt(totalVotes);
+        writeInt(validVotes);
+        writeInt(disqualifiedVotes);
+        writeInt(voteThreshold);
+        writeMethod(method);
+        writeString(name);
+        writeInt(partyCount);
+        return this;
+    }
+
+    BinaryResults national(NationalResult result) {
+        writeTag(TAG_NATIONAL);
+        writeInt(result.getDistrictCount());
+        writeInt(result.getSeats());
+        writeLong(result.getTotalVotes());
+        writeLong(result.getValidVotes());
+        if (result.getParties() != null) {
+            standings(result.getParties());
+        }
+        List<District> districts = result.getDistricts();
+        for (int i = 0; districts != null && i < districts.size(); i++) {
+            district(districts.get(i));
+        }
+        return this;
+    }
+
+    BinaryResults standings(List<NationalPartyResult> standings) {
+        for (int i = 0; i < standings.size(); i++) {
+            NationalPartyResult standing = standings.get(i);
+            writeTag(TAG_STANDING);
+            writeString(standing.getName());
+            writeLong(standing.getVotes());
+            writeInt(standing.getSeats());
+            writeInt(standing.getBonusSeats());
+            writeInt(standing.getDistricts());
+        }
+        return this;
+    }
+
+    private void writeTag(int tag) {
+        ensure(1);
+        buffer[size++] = (byte) tag;
+    }
+
+    private void writeMethod(String method) {
+        for (int code = 1; code < METHODS.length; code++) {
+            if (METHODS[code].equals(method)) {
+                writeInt(code);
+                return;
+            }
+        }
+        writeInt(0);
+        writeString(method);
+    }
+
+    private void writeInt(int value) {
+        ensure(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    private void writeLong(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    // UTF-8 written straight from the chars; null is written as an empty string and an unpaired surrogate
+    // as '?', as String.getBytes would
+    private void writeString(String value) {
+        if (value == null) {
+            writeInt(0);
+            return;
+        }
+        int length = value.length();
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        writeInt(bytes);
+        ensure(bytes);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[size++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[size++] = (byte) (0xC0 | c >> 6);
+                buffer[size++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[size++] = (byte) (0xF0 | codePoint >> 18);
+                buffer[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                buffer[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                buffer[size++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                buffer[size++] = '?';
+            } else {
+                buffer[size++] = (byte) (0xE0 | c >> 12);
+                buffer[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[size++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (size + bytes > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, size + bytes)];
+            System.arraycopy(buffer, 0, grown, 0, size);
+            buffer = grown;
+        }
+    }
+}
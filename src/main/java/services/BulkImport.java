@@ -0,0 +1,70 @@
+package services;
+
+import javax.servlet.http.HttpServletRequest;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ObjIntConsumer;
+
+// Shared helpers for the /bulk variants of the district and party endpoints
+final class BulkImport {
+    static final int BATCH_SIZE = 500;
+
+    private BulkImport() {
+    }
+
+    static boolean isBulkRequest(HttpServletRequest request) {
+        return request.getServletPath().endsWith("/bulk");
+    }
+
+    static boolean isCsv(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType != null && contentType.toLowerCase().startsWith("text/csv");
+    }
+
+    // Splits one CSV line; fields may be wrapped in double quotes, with "" as an escaped quote
+    static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    // Runs the pending batch and hands each generated key to the matching row, in insertion order
+    static <T> void executeBatch(PreparedStatement stmt, List<T> rows, ObjIntConsumer<T> keySetter) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        stmt.executeBatch();
+        try (ResultSet rs = stmt.getGeneratedKeys()) {
+            int i = 0;
+            while (rs.next() && i < rows.size()) {
+                keySetter.accept(rows.get(i++), rs.getInt(1));
+            }
+        }
+        rows.clear();
+    }
+}
@@ -0,0 +1,121 @@
+package services;
+
+import cache.DistrictCache;
+import com.google.gson.Gson;
+import database.DatabaseUtil;
+import database.DistrictRepository;
+import database.ReplicaRouter;
+import database.ResultSnapshots;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Invalidation hook for changes the application did not make, such as results corrected by hand in the
+// database. POST ?districtId=<id> (repeatable) invalidates those districts; without one, every district.
+// Their versions are bumped and their result snapshots marked stale, so every node's cached copy counts as
+// older and ClusterSync drops it there too; the cache generation moves, so national results and simulations
+// reload as well. Requires "Authorization: Bearer <cache.adminToken>" and is refused while no token is set.
+@WebServlet("/api/cache/invalidate")
+public class CacheServlet extends HttpServlet {
+    private static final String ADMIN_TOKEN = System.getProperty("cache.adminToken", "");
+
+    private final Gson gson = new Gson();
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (ADMIN_TOKEN.isEmpty()) {
+            handleError(response, HttpServletResponse.SC_FORBIDDEN, "Cache invalidation is disabled; set cache.adminToken to enable it");
+            return;
+        }
+        if (!authorized(request)) {
+            response.setHeader("WWW-Authenticate", "Bearer");
+            handleError(response, HttpServletResponse.SC_UNAUTHORIZED, "Missing or wrong admin token");
+            return;
+        }
+        try {
+            String[] ids = request.getParameterValues("districtId");
+            boolean all = ids == null || ids.length == 0;
+            // In id order, so row locks are taken in the same order as other writers take them
+            Set<Integer> districtIds = new TreeSet<>();
+            if (!all) {
+                for (String id : ids) {
+                    districtIds.add(VoteParameters.parseIntOrThrow(id.trim(), "District ID"));
+                }
+            }
+
+            Map<Integer, Integer> versions;
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    if (all) {
+                        districtIds.addAll(DistrictRepository.fetchIds(conn));
+                    }
+                    try (PreparedStatement stmt = conn.prepareStatement("UPDATE districts SET version = version + 1 WHERE id = ?")) {
+                        for (int districtId : districtIds) {
+                            stmt.setInt(1, districtId);
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                    }
+                    versions = DistrictRepository.fetchVersions(conn, districtIds);
+                    ResultSnapshots.markStale(conn, versions.keySet());
+                    conn.commit();
+                } catch (Exception e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+
+            DistrictCache cache = DistrictCache.getInstance();
+            if (all) {
+                cache.invalidateAll();
+            }
+            for (Map.Entry<Integer, Integer> entry : versions.entrySet()) {
+                cache.invalidate(entry.getKey(), entry.getValue());
+                // Reads here go to the primary until replicas have the new version, and ClusterSync skips it
+                ReplicaRouter.recordWrite(entry.getKey(), entry.getValue());
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("invalidated", all ? "all" : new TreeSet<>(versions.keySet()));
+            districtIds.removeAll(versions.keySet());
+            if (!districtIds.isEmpty()) {
+                result.put("notFound", districtIds);
+            }
+            result.put("generation", cache.getGenerationTag());
+
+            response.setContentType("application/json");
+            response.getWriter().write(gson.toJson(result));
+        } catch (Exception e) {
+            handleError(response, HttpServletResponse.SC_BAD_REQUEST, "Failed to invalidate cache: " + e.getMessage());
+        }
+    }
+
+    // Constant-time comparison, so the token cannot be guessed from response times
+    private static boolean authorized(HttpServletRequest request) {
+        String header = request.getHeader("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            return false;
+        }
+        return MessageDigest.isEqual(header.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8),
+                ADMIN_TOKEN.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void handleError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.getWriter().write("Error: " + message);
+    }
+}
@@ -0,0 +1,130 @@
+package services;
+
+import cache.DistrictCache;
+import database.DatabaseUtil;
+import database.DistrictRepository;
+import database.ReplicaRouter;
+import database.ResultSnapshots;
+import model.District;
+
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Keeps this node's in-memory results in step with writes made through other nodes behind the balancer.
+// Every result write, staleness mark and district creation stamps district_results.updated_at in the writing
+// transaction, so polling that column finds the districts that changed anywhere. A changed district is dropped
+// from the district cache unless this node already holds that version, which also moves the cache generation
+// that the national results, simulation snapshots and district list ETags are keyed by, and is pushed to local
+// result stream subscribers.
+//
+// Each poll looks back overlapMillis before the latest change it has seen, to cover clock differences between
+// nodes and transactions that commit a while after stamping the row; the cache TTL bounds anything later still.
+// Local writes are recognised through ReplicaRouter, so db.replica.trackMillis must exceed the overlap.
+final class ClusterSync {
+    private static final ClusterSync INSTANCE = new ClusterSync(
+            Long.getLong("cache.sync.intervalMillis", 1000L),
+            Long.getLong("cache.sync.overlapMillis", 5000L));
+
+    private final long intervalMillis;
+    private final long overlapMillis;
+    private ScheduledExecutorService poller;
+
+    // Only touched by the poller thread: the versions returned by the previous poll, so districts that stay
+    // inside the overlap window are not invalidated again on every poll
+    private long since = -1;
+    private Map<Integer, Integer> seen = new HashMap<>();
+
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong invalidated = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+
+    ClusterSync(long intervalMillis, long overlapMillis) {
+        this.intervalMillis = intervalMillis;
+        this.overlapMillis = overlapMillis;
+    }
+
+    static ClusterSync getInstance() {
+        return INSTANCE;
+    }
+
+    // A zero interval disables polling, for single-node deployments
+    synchronized void start() {
+        if (poller != null || intervalMillis <= 0) {
+            return;
+        }
+        poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        poller.scheduleWithFixedDelay(this::poll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void shutdown() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", intervalMillis > 0);
+        stats.put("intervalMillis", intervalMillis);
+        stats.put("polls", polls.get());
+        stats.put("failures", failures.get());
+        stats.put("invalidated", invalidated.get());
+        stats.put("forwarded", forwarded.get());
+        return stats;
+    }
+
+    private void poll() {
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            if (since < 0) {
+                // Nothing is cached yet, so only changes from here on matter
+                since = ResultSnapshots.fetchLatestChange(conn);
+                return;
+            }
+            Map<Integer, Integer> changed = new HashMap<>();
+            since = ResultSnapshots.fetchChangedSince(conn, since - overlapMillis, changed);
+            for (Map.Entry<Integer, Integer> change : changed.entrySet()) {
+                int districtId = change.getKey();
+                int version = change.getValue();
+                Integer previous = seen.get(districtId);
+                // Writes made through this node already updated its cache and subscribers
+                if (previous != null && previous >= version || ReplicaRouter.isRecentLocalWrite(districtId, version)) {
+                    continue;
+                }
+                if (DistrictCache.getInstance().invalidateIfOlder(districtId, version)) {
+                    invalidated.incrementAndGet();
+                    forward(conn, districtId);
+                }
+            }
+            seen = changed;
+            polls.incrementAndGet();
+        } catch (Exception e) {
+            // The next poll covers the same window again
+            failures.incrementAndGet();
+        }
+    }
+
+    // Subscribers connected to this node would otherwise only hear about writes made here
+    private void forward(Connection conn, int districtId) throws Exception {
+        ResultBroadcaster broadcaster = ResultBroadcaster.getInstance();
+        if (!broadcaster.hasSubscribers(districtId)) {
+            return;
+        }
+        District district = DistrictRepository.fetchDistrictById(conn, districtId);
+        if (district != null) {
+            broadcaster.publish(district);
+            forwarded.incrementAndGet();
+        }
+    }
+}
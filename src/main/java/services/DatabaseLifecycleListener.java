@@ -0,0 +1,82 @@
+package services;
+
+import audit.AuditLog;
+import database.DatabaseUtil;
+import database.SchemaMigrator;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Enumeration;
+import java.util.Properties;
+
+@WebListener
+public class DatabaseLifecycleListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        ServletContext context = event.getServletContext();
+        Properties settings = new Properties();
+        Enumeration<String> names = context.getInitParameterNames();
+        while (names.hasMoreElements()) {
+            String name = names.nextElement();
+            if (name.startsWith("db.")) {
+                settings.setProperty(name, context.getInitParameter(name));
+            }
+        }
+        try {
+            DatabaseUtil.start(settings);
+        } catch (Exception e) {
+            // Connections are created lazily if the database is not reachable yet
+            context.log("Connection pool warm-up failed: " + e.getMessage());
+        }
+        if (!"false".equalsIgnoreCase(settings.getProperty("db.migrate", System.getProperty("db.migrate")))) {
+            migrate(context);
+        }
+        try {
+            AuditLog.getInstance().open();
+        } catch (Exception e) {
+            // Votes are still accepted; every record that cannot be appended is counted in the status
+            context.log("Audit log failed to open: " + e.getMessage());
+        }
+        try {
+            TallyQueue.getInstance().start();
+        } catch (Exception e) {
+            // Synchronous tallies still work; async submissions are refused until the journal is usable
+            context.log("Tally queue failed to start: " + e.getMessage());
+        }
+        ClusterSync.getInstance().start();
+    }
+
+    // A database that cannot be reached is retried on the next start; a failing script stops deployment
+    private void migrate(ServletContext context) {
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            int applied = SchemaMigrator.migrate(conn);
+            context.log("Schema migrations applied: " + applied);
+        } catch (SQLException e) {
+            if (e.getSQLState() != null && e.getSQLState().startsWith("08")) {
+                context.log("Schema migrations skipped, database unavailable: " + e.getMessage());
+                return;
+            }
+            throw new IllegalStateException("Schema migration failed: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Schema migration failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        AsyncDispatch.shutdown();
+        // Closes the result streams; results committed from here on are no longer published
+        ResultBroadcaster.getInstance().shutdown();
+        // Both finish their work before the pool they depend on goes away, and the audit log they append to
+        ClusterSync.getInstance().shutdown();
+        TallyQueue.getInstance().shutdown();
+        AuditLog.getInstance().close();
+        DatabaseUtil.shutdown();
+    }
+}
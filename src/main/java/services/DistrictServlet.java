@@ -1,92 +1,349 @@
 package services;
 
+import allocation.AllocationMethod;
+import cache.DistrictCache;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import database.DatabaseUtil;
+import database.DistrictRepository;
+import database.ReplicaRouter;
+import database.ResultSnapshots;
+import metrics.Phases;
 import model.District;
+import model.Party;
 
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-@WebServlet("/api/district")
+@WebServlet(urlPatterns = {"/api/district", "/api/district/bulk"}, asyncSupported = true)
 public class DistrictServlet extends HttpServlet {
+    private static final Phases POST_PHASES = new Phases("/api/district", "POST");
+    private static final Phases BULK_PHASES = new Phases("/api/district/bulk", "POST");
+    private static final Phases GET_PHASES = new Phases("/api/district", "GET");
+
     private final Gson gson = new Gson();
+    private final int fetchSize = Integer.getInteger("db.list.fetchSize", 500);
 
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        AsyncDispatch.run(request, response, this::processPost);
+    }
+
+    private void processPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (BulkImport.isBulkRequest(request)) {
+            doBulkPost(request, response);
+            return;
+        }
         try {
             District district = new District();
             district.setName(request.getParameter("name"));
             district.setSeats(parseIntOrThrow(request.getParameter("seats"), "Seats"));
+            district.setAllocationMethod(AllocationMethod.parse(request.getParameter("method")).name());
 
+            long t = System.nanoTime();
             saveDistrict(district);
-            request.getSession().setAttribute("district", district);
+            DistrictCache.getInstance().invalidateList();
+            ReadYourWrites.remember(request, response, district.getId(), district.getVersion());
+            t = POST_PHASES.db(t);
 
             response.setContentType("application/json");
             response.getWriter().write(gson.toJson(district));
+            POST_PHASES.serialize(t);
         } catch (Exception e) {
             handleError(response, "Failed to create district: " + e.getMessage());
         }
     }
 
-    @Override
-    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // Accepts [{"name": "X", "seats": 10, "parties": ["A", "B"]}, ...] or, with Content-Type text/csv,
+    // "name,seats[,party...]" lines; districts and their parties are inserted in one transaction
+    private void doBulkPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
         try {
-            List<District> districts = fetchAllDistricts();
+            long t = System.nanoTime();
+            List<District> districts = BulkImport.isCsv(request)
+                    ? readDistrictsCsv(request.getReader())
+                    : readDistrictsJson(request.getReader());
             if (districts.isEmpty()) {
-                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                handleError(response, "At least one district is required");
                 return;
             }
+            t = BULK_PHASES.compute(t);
+
+            Map<Integer, Integer> versions = new LinkedHashMap<>();
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    saveDistricts(districts, conn);
+                    List<Integer> ids = new ArrayList<>();
+                    for (District district : districts) {
+                        ids.add(district.getId());
+                    }
+                    ResultSnapshots.markStale(conn, ids);
+                    Map<Integer, List<Party>> partiesByDistrict = new LinkedHashMap<>();
+                    for (District district : districts) {
+                        if (!district.getParties().isEmpty()) {
+                            partiesByDistrict.put(district.getId(), district.getParties());
+                        }
+                    }
+                    Map<Integer, Integer> partyVersions = PartyServlet.savePartiesToDatabase(partiesByDistrict, conn);
+                    conn.commit();
+                    for (District district : districts) {
+                        versions.put(district.getId(), partyVersions.getOrDefault(district.getId(), district.getVersion()));
+                    }
+                } catch (Exception e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            DistrictCache.getInstance().invalidateList();
+            ReadYourWrites.remember(request, response, versions);
+            t = BULK_PHASES.db(t);
+
             response.setContentType("application/json");
             response.getWriter().write(gson.toJson(districts));
+            BULK_PHASES.serialize(t);
+        } catch (Exception e) {
+            handleError(response, "Failed to import districts: " + e.getMessage());
+        }
+    }
+
+    // Streams districts in id order straight from the ResultSet; pass ?after=<last id>&limit=<n> to page
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        AsyncDispatch.run(request, response, this::processGet);
+    }
+
+    private void processGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            int after = optionalInt(request.getParameter("after"), 0, "After");
+            int limit = optionalInt(request.getParameter("limit"), 0, "Limit");
+            if (limit < 0) {
+                throw new IllegalArgumentException("Limit cannot be negative");
+            }
+
+            boolean binary = HttpCaching.acceptsBinary(request, response);
+            DistrictCache cache = DistrictCache.getInstance();
+            String etag = "\"l" + cache.getGenerationTag() + "-" + after + "-" + limit + "\"";
+            if (HttpCaching.notModified(request, response, HttpCaching.variant(etag, binary), cache.lastChange())) {
+                return;
+            }
+            streamDistricts(request, response, after, limit, binary);
         } catch (Exception e) {
-            handleError(response, "Failed to fetch districts: " + e.getMessage());
+            // The stream may already be open (and gzipped), so the error replaces the whole response
+            if (!response.isCommitted()) {
+                response.reset();
+                handleError(response, "Failed to fetch districts: " + e.getMessage());
+            }
         }
     }
 
+    // The staleness mark lets other nodes' ClusterSync see the new district and refresh their listings
     private void saveDistrict(District district) throws Exception {
         try (Connection conn = DatabaseUtil.getConnection()) {
-            String sql = "INSERT INTO districts (name, seats) VALUES (?, ?)";
-            try (PreparedStatement stmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            conn.setAutoCommit(false);
+            try {
+                DistrictRepository.insertDistrict(conn, district);
+                ResultSnapshots.markStale(conn, Collections.singleton(district.getId()));
+                conn.commit();
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private void saveDistricts(List<District> districts, Connection conn) throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement(DistrictRepository.INSERT_DISTRICT, PreparedStatement.RETURN_GENERATED_KEYS)) {
+            List<District> pending = new ArrayList<>();
+            for (District district : districts) {
                 stmt.setString(1, district.getName());
                 stmt.setInt(2, district.getSeats());
-                stmt.executeUpdate();
-                try (ResultSet rs = stmt.getGeneratedKeys()) {
-                    if (rs.next()) district.setId(rs.getInt(1));
+                stmt.setString(3, district.getAllocationMethod());
+                stmt.addBatch();
+                pending.add(district);
+                if (pending.size() == BulkImport.BATCH_SIZE) {
+                    BulkImport.executeBatch(stmt, pending, District::setId);
                 }
             }
+            BulkImport.executeBatch(stmt, pending, District::setId);
         }
     }
 
-    private List<District> fetchAllDistricts() throws Exception {
+    private List<District> readDistrictsJson(BufferedReader reader) throws IOException {
         List<District> districts = new ArrayList<>();
-        try (Connection conn = DatabaseUtil.getConnection()) {
-            String sql = "SELECT * FROM districts";
-            try (PreparedStatement stmt = conn.prepareStatement(sql);
-                 ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    District district = new District();
-                    district.setId(rs.getInt("id"));
-                    district.setName(rs.getString("name"));
-                    district.setSeats(rs.getInt("seats"));
-                    district.setTotalVotes(rs.getInt("total_votes"));
-                    district.setValidVotes(rs.getInt("valid_votes"));
-                    district.setDisqualifiedVotes(rs.getInt("disqualified_votes"));
-                    district.setVoteThreshold(rs.getInt("vote_threshold"));
-                    districts.add(district);
+        JsonReader json = new JsonReader(reader);
+        json.beginArray();
+        while (json.hasNext()) {
+            District district = new District();
+            json.beginObject();
+            while (json.hasNext()) {
+                String field = json.nextName();
+                if (field.equals("name")) {
+                    district.setName(json.nextString());
+                } else if (field.equals("seats")) {
+                    district.setSeats(json.nextInt());
+                } else if (field.equals("method")) {
+                    district.setAllocationMethod(json.nextString());
+                } else if (field.equals("parties")) {
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        district.addParty(createParty(json.nextString()));
+                    }
+                    json.endArray();
+                } else {
+                    json.skipValue();
                 }
             }
+            json.endObject();
+            districts.add(validate(district));
         }
+        json.endArray();
         return districts;
     }
 
+    private List<District> readDistrictsCsv(BufferedReader reader) throws IOException {
+        List<District> districts = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            List<String> fields = BulkImport.parseCsvLine(line);
+            if (lineNumber == 1 && fields.get(0).equalsIgnoreCase("name")) {
+                continue;
+            }
+            if (fields.size() < 2) {
+                throw new IllegalArgumentException("Line " + lineNumber + " must be name,seats[,party...]");
+            }
+            District district = new District();
+            district.setName(fields.get(0));
+            district.setSeats(parseIntOrThrow(fields.get(1), "Seats on line " + lineNumber));
+            for (String partyName : fields.subList(2, fields.size())) {
+                district.addParty(createParty(partyName));
+            }
+            districts.add(validate(district));
+        }
+        return districts;
+    }
+
+    private District validate(District district) throws IllegalArgumentException {
+        if (district.getName() == null || district.getName().trim().isEmpty()) {
+            throw new IllegalArgumentException("District name cannot be empty");
+        }
+        district.setName(district.getName().trim());
+        district.setAllocationMethod(AllocationMethod.parse(district.getAllocationMethod()).name());
+        return district;
+    }
+
+    private Party createParty(String name) throws IllegalArgumentException {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Party name cannot be empty");
+        }
+        Party party = new Party();
+        party.setName(name.trim());
+        return party;
+    }
+
+    private void streamDistricts(HttpServletRequest request, HttpServletResponse response, int after, int limit,
+                                 boolean binary) throws Exception {
+        // writeDistrict reads DISTRICT_COLUMNS by position
+        String sql = "SELECT " + DistrictRepository.DISTRICT_COLUMNS + " "
+                + "FROM districts WHERE id > ? ORDER BY id" + (limit > 0 ? " LIMIT ?" : "");
+        long t = System.nanoTime();
+        // A replica serves the listing once it has every district this client wrote recently
+        try (Connection conn = ReplicaRouter.getReadConnection(ReadYourWrites.minVersions(request));
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setFetchSize(fetchSize);
+            stmt.setInt(1, after);
+            if (limit > 0) {
+                stmt.setInt(2, limit);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                boolean hasRows = rs.next();
+                // Up to the first row is database time; the rest interleaves fetching and writing
+                t = GET_PHASES.db(t);
+                // Keep the original 404 for an empty table; later pages just come back empty
+                if (!hasRows && after == 0) {
+                    response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                    return;
+                }
+                // Streams are only closed on success: closing finishes the response, and a failure that
+                // happens before anything is committed is answered with an error instead of a cut-off body
+                if (binary) {
+                    OutputStream out = HttpCaching.openBinaryStream(request, response);
+                    try (BinaryResults body = BinaryResults.begin()) {
+                        while (hasRows) {
+                            writeDistrict(body, rs);
+                            if (body.size() >= BinaryResults.FLUSH_BYTES) {
+                                body.flushTo(out);
+                            }
+                            hasRows = rs.next();
+                        }
+                        body.end().flushTo(out);
+                    }
+                    out.close();
+                } else {
+                    JsonWriter json = new JsonWriter(HttpCaching.openJsonWriter(request, response));
+                    json.beginArray();
+                    while (hasRows) {
+                        writeDistrict(json, rs);
+                        hasRows = rs.next();
+                    }
+                    json.endArray();
+                    json.close();
+                }
+                GET_PHASES.serialize(t);
+            }
+        }
+    }
+
+    // Same field names as Gson's reflective output for District, without building the object
+    private void writeDistrict(JsonWriter json, ResultSet rs) throws Exception {
+        json.beginObject();
+        json.name("id").value(rs.getInt(1));
+        json.name("name").value(rs.getString(2));
+        json.name("seats").value(rs.getInt(3));
+        json.name("totalVotes").value(rs.getInt(4));
+        json.name("validVotes").value(rs.getInt(5));
+        json.name("disqualifiedVotes").value(rs.getInt(6));
+        json.name("voteThreshold").value(rs.getInt(7));
+        json.name("version").value(rs.getInt(8));
+        String allocationMethod = rs.getString(9);
+        if (allocationMethod != null) {
+            json.name("allocationMethod").value(allocationMethod);
+        }
+        json.name("parties").beginArray().endArray();
+        json.endObject();
+    }
+
+    private void writeDistrict(BinaryResults body, ResultSet rs) throws Exception {
+        body.district(rs.getInt(1), rs.getInt(8), rs.getInt(3), rs.getInt(4), rs.getInt(5), rs.getInt(6), rs.getInt(7),
+                rs.getString(9), rs.getString(2), 0);
+    }
+
+    private int optionalInt(String value, int defaultValue, String fieldName) throws IllegalArgumentException {
+        return value == null || value.trim().isEmpty() ? defaultValue : parseIntOrThrow(value.trim(), fieldName);
+    }
+
     private int parseIntOrThrow(String value, String fieldName) throws IllegalArgumentException {
         try {
             return Integer.parseInt(value);
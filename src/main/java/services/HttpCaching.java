@@ -0,0 +1,163 @@
+package services;
+
+import model.District;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+// Conditional GET (ETag / Last-Modified), gzip and JSON / binary negotiation for the result endpoints
+final class HttpCaching {
+    static final int GZIP_MIN_BYTES = 1024;
+
+    private HttpCaching() {
+    }
+
+    static String etag(District district) {
+        return etag(district.getId(), district.getVersion());
+    }
+
+    static String etag(int districtId, int version) {
+        return "\"d" + districtId + "-v" + version + "\"";
+    }
+
+    // Whether the client asked for BinaryResults over JSON. Either way the response varies by Accept, and each
+    // representation needs its own ETag (see variant).
+    static boolean acceptsBinary(HttpServletRequest request, HttpServletResponse response) {
+        response.addHeader("Vary", "Accept");
+        String accept = request.getHeader("Accept");
+        if (accept == null) {
+            return false;
+        }
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            if (parts[0].trim().equalsIgnoreCase(BinaryResults.MEDIA_TYPE)) {
+                for (int i = 1; i < parts.length; i++) {
+                    if (parts[i].trim().replace(" ", "").matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The ETag of the binary representation of the resource that etag names
+    static String variant(String etag, boolean binary) {
+        return binary ? etag.substring(0, etag.length() - 1) + "-b\"" : etag;
+    }
+
+    // Sets the validators and, if the client's copy is current, answers 304 and returns true
+    static boolean notModified(HttpServletRequest request, HttpServletResponse response, String etag, long lastModified) {
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", "no-cache");
+        if (lastModified > 0) {
+            response.setDateHeader("Last-Modified", lastModified);
+        }
+
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        boolean notModified;
+        if (ifNoneMatch != null) {
+            notModified = matches(ifNoneMatch, etag);
+        } else {
+            long ifModifiedSince = parseDateHeader(request, "If-Modified-Since");
+            // HTTP dates have one-second resolution
+            notModified = lastModified > 0 && ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+        }
+        if (notModified) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+        return notModified;
+    }
+
+    static void writeJson(HttpServletRequest request, HttpServletResponse response, String json) throws IOException {
+        writeJson(request, response, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // For UTF-8 JSON that was serialized ahead of time
+    static void writeJson(HttpServletRequest request, HttpServletResponse response, byte[] body) throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        write(request, response, body, body.length);
+    }
+
+    static void writeBinary(HttpServletRequest request, HttpServletResponse response, BinaryResults body) throws IOException {
+        response.setContentType(BinaryResults.MEDIA_TYPE);
+        write(request, response, body.array(), body.size());
+    }
+
+    static void writeBinary(HttpServletRequest request, HttpServletResponse response, byte[] body) throws IOException {
+        response.setContentType(BinaryResults.MEDIA_TYPE);
+        write(request, response, body, body.length);
+    }
+
+    private static void write(HttpServletRequest request, HttpServletResponse response, byte[] body, int length)
+            throws IOException {
+        response.addHeader("Vary", "Accept-Encoding");
+        if (length < GZIP_MIN_BYTES || !acceptsGzip(request)) {
+            response.setContentLength(length);
+            response.getOutputStream().write(body, 0, length);
+            return;
+        }
+        response.setHeader("Content-Encoding", "gzip");
+        OutputStream out = new GZIPOutputStream(response.getOutputStream(), 8192);
+        out.write(body, 0, length);
+        out.close();
+    }
+
+    // For bodies streamed without knowing their size; gzip is used whenever the client accepts it
+    static Writer openJsonWriter(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        return new BufferedWriter(new OutputStreamWriter(openStream(request, response), StandardCharsets.UTF_8), 8192);
+    }
+
+    // BinaryResults buffers its own output, so the stream is not wrapped in another buffer
+    static OutputStream openBinaryStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(BinaryResults.MEDIA_TYPE);
+        return openStream(request, response);
+    }
+
+    private static OutputStream openStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.addHeader("Vary", "Accept-Encoding");
+        OutputStream out = response.getOutputStream();
+        if (acceptsGzip(request)) {
+            response.setHeader("Content-Encoding", "gzip");
+            out = new GZIPOutputStream(out, 8192);
+        }
+        return out;
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long parseDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+}
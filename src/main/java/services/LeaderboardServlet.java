@@ -0,0 +1,53 @@
+package services;
+
+import cache.DistrictCache;
+import com.google.gson.Gson;
+import database.DatabaseUtil;
+import database.ResultSnapshots;
+import model.NationalPartyResult;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.sql.Connection;
+import java.util.List;
+
+// National party standings from the materialized leaderboard; ?limit=<n> returns the top n
+@WebServlet("/api/results/leaderboard")
+public class LeaderboardServlet extends HttpServlet {
+    private final Gson gson = new Gson();
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            String value = request.getParameter("limit");
+            int limit = value == null || value.trim().isEmpty() ? 0 : VoteParameters.parseIntOrThrow(value.trim(), "Limit");
+            if (limit < 0) {
+                throw new IllegalArgumentException("Limit cannot be negative");
+            }
+
+            boolean binary = HttpCaching.acceptsBinary(request, response);
+            DistrictCache cache = DistrictCache.getInstance();
+            String etag = "\"b" + cache.getGenerationTag() + "-" + limit + "\"";
+            if (HttpCaching.notModified(request, response, HttpCaching.variant(etag, binary), cache.lastChange())) {
+                return;
+            }
+            List<NationalPartyResult> leaderboard;
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                leaderboard = ResultSnapshots.fetchLeaderboard(conn, limit);
+            }
+            if (binary) {
+                try (BinaryResults body = BinaryResults.begin()) {
+                    HttpCaching.writeBinary(request, response, body.standings(leaderboard).end());
+                }
+            } else {
+                HttpCaching.writeJson(request, response, gson.toJson(leaderboard));
+            }
+        } catch (Exception e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.getWriter().write("Error: Failed to fetch leaderboard: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package services;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletMapping;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.MappingMatch;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Records latency and error counts per endpoint; async requests are recorded once, when they complete
+@WebFilter(urlPatterns = "/api/*", asyncSupported = true)
+public class MetricsFilter implements Filter {
+    private static final Set<String> METHODS = new HashSet<>(
+            Arrays.asList("GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH"));
+
+    // Keyed by mapping pattern and method, both from fixed sets, so the label set stays bounded
+    private static final Map<String, Endpoint> ENDPOINTS = new ConcurrentHashMap<>();
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse res, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) res;
+        Endpoint endpoint = endpoint(request);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(req, res);
+            failed = false;
+        } finally {
+            if (!failed && request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    // Set before onComplete, which the container always fires last
+                    private volatile int status;
+
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        endpoint.record(status != 0 ? status : response.getStatus(), start);
+                    }
+
+                    // AsyncDispatch lets a running handler answer a timed-out request, and sets 503 itself otherwise
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                        status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                endpoint.record(failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus(), start);
+            }
+        }
+    }
+
+    // The matched servlet mapping, not the raw path, so unmapped URLs all share one series
+    private static Endpoint endpoint(HttpServletRequest request) {
+        HttpServletMapping mapping = request.getHttpServletMapping();
+        MappingMatch match = mapping == null ? null : mapping.getMappingMatch();
+        String pattern = match == MappingMatch.EXACT || match == MappingMatch.PATH || match == MappingMatch.EXTENSION
+                ? mapping.getPattern() : "other";
+        String method = METHODS.contains(request.getMethod()) ? request.getMethod() : "other";
+        return ENDPOINTS.computeIfAbsent(pattern + " " + method, key -> new Endpoint(pattern, method));
+    }
+
+    private static final class Endpoint {
+        private final String pattern;
+        private final String method;
+        private final LatencyHistogram latency;
+        private final Map<Integer, LongAdder> errors = new ConcurrentHashMap<>();
+
+        Endpoint(String pattern, String method) {
+            this.pattern = pattern;
+            this.method = method;
+            this.latency = Metrics.histogram("voting_http_request_seconds",
+                    "HTTP request latency by endpoint", "endpoint", pattern, "method", method);
+        }
+
+        void record(int status, long start) {
+            latency.recordSince(start);
+            if (status >= 400) {
+                errors.computeIfAbsent(status, code -> Metrics.counter("voting_http_errors_total",
+                        "HTTP responses with status 400 or above",
+                        "endpoint", pattern, "method", method, "status", String.valueOf(code))).increment();
+            }
+        }
+    }
+}
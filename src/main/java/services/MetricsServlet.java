@@ -0,0 +1,56 @@
+package services;
+
+import cache.DistrictCache;
+import database.ConnectionPool;
+import database.DatabaseUtil;
+import metrics.Metrics;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+
+@WebServlet(urlPatterns = "/metrics", loadOnStartup = 1)
+public class MetricsServlet extends HttpServlet {
+
+    @Override
+    public void init() {
+        Metrics.gauge("voting_db_pool_active", "Connections currently leased from the pool",
+                () -> poolStats().getActive());
+        Metrics.gauge("voting_db_pool_idle", "Idle connections in the pool",
+                () -> poolStats().getIdle());
+        Metrics.gauge("voting_db_pool_waiting", "Threads waiting for a pooled connection",
+                () -> poolStats().getWaiting());
+        Metrics.functionCounter("voting_db_pool_timeouts_total", "Connection requests that timed out",
+                () -> poolStats().getTimeouts());
+        Metrics.gauge("voting_cache_entries", "Districts held in the result cache",
+                () -> DistrictCache.getInstance().getStats().getSize());
+        Metrics.functionCounter("voting_cache_hits_total", "Result cache hits",
+                () -> DistrictCache.getInstance().getStats().getHits());
+        Metrics.functionCounter("voting_cache_misses_total", "Result cache misses",
+                () -> DistrictCache.getInstance().getStats().getMisses());
+        Metrics.functionCounter("voting_cache_evictions_total", "Result cache evictions",
+                () -> DistrictCache.getInstance().getStats().getEvictions());
+        Metrics.gauge("voting_stream_subscribers", "Connected result stream subscribers",
+                () -> ((Number) ResultBroadcaster.getInstance().getStats().get("subscribers")).doubleValue());
+        Metrics.gauge("voting_tally_queue_depth", "Tallies waiting for the write-behind writer",
+                () -> TallyQueue.getInstance().depth());
+        Metrics.functionCounter("voting_tally_queue_rejected_total", "Tallies refused because the queue was full",
+                () -> ((Number) TallyQueue.getInstance().getStats().get("rejected")).doubleValue());
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("text/plain; version=0.0.4");
+        response.setCharacterEncoding("UTF-8");
+        Writer out = response.getWriter();
+        Metrics.writePrometheus(out);
+        out.flush();
+    }
+
+    private static ConnectionPool.Stats poolStats() {
+        return DatabaseUtil.getPoolStats();
+    }
+}
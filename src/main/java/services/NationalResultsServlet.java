@@ -0,0 +1,120 @@
+package services;
+
+import allocation.NationalAggregator;
+import cache.DistrictCache;
+import com.google.gson.Gson;
+import database.DatabaseUtil;
+import database.DistrictRepository;
+import model.District;
+import model.NationalResult;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.sql.Connection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+@WebServlet("/api/results/national")
+public class NationalResultsServlet extends HttpServlet {
+    private final Gson gson = new Gson();
+    private final ForkJoinPool pool = new ForkJoinPool(
+            Integer.getInteger("national.parallelism", Runtime.getRuntime().availableProcessors()));
+    private final long maxAgeMillis = Long.getLong("cache.districts.ttlMillis", 60_000L);
+
+    // The merged result stays valid until any district changes (the cache generation moves) or it ages out
+    private volatile Snapshot snapshot;
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            Snapshot current = currentSnapshot();
+            if (current.districtCount == 0) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            boolean binary = HttpCaching.acceptsBinary(request, response);
+            if (HttpCaching.notModified(request, response, HttpCaching.variant(current.etag, binary), current.computedAt)) {
+                return;
+            }
+            if (binary) {
+                HttpCaching.writeBinary(request, response, current.binary());
+            } else {
+                HttpCaching.writeJson(request, response, current.json);
+            }
+        } catch (Exception e) {
+            handleError(response, "Failed to compute national results: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+    }
+
+    private Snapshot currentSnapshot() throws Exception {
+        DistrictCache cache = DistrictCache.getInstance();
+        Snapshot current = snapshot;
+        if (isFresh(current, cache.getGeneration())) {
+            return current;
+        }
+        synchronized (this) {
+            long generation = cache.getGeneration();
+            current = snapshot;
+            if (isFresh(current, generation)) {
+                return current;
+            }
+            List<District> districts;
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                districts = DistrictRepository.fetchAllWithParties(conn);
+            }
+            String etag = "\"n" + districts.size() + "-" + Long.toHexString(DistrictCache.signature(districts)) + "\"";
+            NationalResult result = NationalAggregator.aggregate(districts, pool);
+            current = new Snapshot(generation, etag, result, gson.toJson(result), districts.size());
+            snapshot = current;
+            return current;
+        }
+    }
+
+    private boolean isFresh(Snapshot current, long generation) {
+        return current != null && current.generation == generation
+                && System.currentTimeMillis() - current.computedAt < maxAgeMillis;
+    }
+
+    private void handleError(HttpServletResponse response, String message) throws IOException {
+        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        response.getWriter().write("Error: " + message);
+    }
+
+    private static final class Snapshot {
+        final long generation;
+        final String etag;
+        final NationalResult result;
+        final String json;
+        final int districtCount;
+        final long computedAt = System.currentTimeMillis();
+        // Encoded on the first binary request; racing requests may each encode it once
+        private volatile byte[] binary;
+
+        Snapshot(long generation, String etag, NationalResult result, String json, int districtCount) {
+            this.generation = generation;
+            this.etag = etag;
+            this.result = result;
+            this.json = json;
+            this.districtCount = districtCount;
+        }
+
+        byte[] binary() {
+            byte[] encoded = binary;
+            if (encoded == null) {
+                try (BinaryResults body = BinaryResults.begin()) {
+                    encoded = body.national(result).end().toByteArray();
+                }
+                binary = encoded;
+            }
+            return encoded;
+        }
+    }
+}
@@ -1,29 +1,52 @@
 package services;
 
+import cache.DistrictCache;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
 import database.DatabaseUtil;
+import database.DistrictRepository;
+import database.ResultSnapshots;
+import metrics.Phases;
 import model.Party;
 
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-@WebServlet("/api/parties")
+@WebServlet(urlPatterns = {"/api/parties", "/api/parties/bulk"}, asyncSupported = true)
 public class PartyServlet extends HttpServlet {
+    private static final Phases POST_PHASES = new Phases("/api/parties", "POST");
+    private static final Phases BULK_PHASES = new Phases("/api/parties/bulk", "POST");
+
     private final Gson gson = new Gson();
 
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-        try {
+        AsyncDispatch.run(request, response, this::processPost);
+    }
+
+    private void processPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (BulkImport.isBulkRequest(request)) {
+            doBulkPost(request, response);
+            return;
+        }
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            long t = System.nanoTime();
             int districtId = parseIntOrThrow(request.getParameter("districtId"), "District ID");
-            if (!districtExists(districtId)) {
+            if (!districtExists(districtId, conn)) {
                 handleError(response, "District with ID " + districtId + " not found");
                 return;
             }
@@ -35,17 +58,158 @@ public class PartyServlet extends HttpServlet {
             }
 
             List<Party> parties = createParties(partyNames);
-            savePartiesToDatabase(districtId, parties);
+            Map<Integer, Integer> versions;
+            conn.setAutoCommit(false);
+            try {
+                versions = savePartiesToDatabase(Collections.singletonMap(districtId, parties), conn);
+                conn.commit();
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            invalidate(versions);
+            ReadYourWrites.remember(request, response, versions);
+            t = POST_PHASES.db(t);
 
             response.setContentType("application/json");
             response.getWriter().write(gson.toJson(parties));
+            POST_PHASES.serialize(t);
         } catch (Exception e) {
             handleError(response, "Failed to create parties: " + e.getMessage());
         }
     }
 
-    private boolean districtExists(int districtId) throws IOException {
-        try (Connection conn = DatabaseUtil.getConnection()) {
+    // Accepts [{"districtId": 1, "parties": ["A", "B"]}, ...] or, with Content-Type text/csv, "districtId,partyName" lines
+    private void doBulkPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            long t = System.nanoTime();
+            Map<Integer, List<Party>> partiesByDistrict = BulkImport.isCsv(request)
+                    ? readPartiesCsv(request.getReader())
+                    : readPartiesJson(request.getReader());
+            if (partiesByDistrict.isEmpty()) {
+                handleError(response, "At least one party is required");
+                return;
+            }
+            t = BULK_PHASES.compute(t);
+
+            Map<Integer, Integer> versions;
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                Set<Integer> missing = findMissingDistricts(partiesByDistrict.keySet(), conn);
+                if (!missing.isEmpty()) {
+                    handleError(response, "Districts not found: " + missing);
+                    return;
+                }
+                conn.setAutoCommit(false);
+                try {
+                    versions = savePartiesToDatabase(partiesByDistrict, conn);
+                    conn.commit();
+                } catch (Exception e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+            }
+            invalidate(versions);
+            ReadYourWrites.remember(request, response, versions);
+            t = BULK_PHASES.db(t);
+
+            List<Map<String, Object>> result = new ArrayList<>();
+            for (Map.Entry<Integer, List<Party>> entry : partiesByDistrict.entrySet()) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("districtId", entry.getKey());
+                item.put("parties", entry.getValue());
+                result.add(item);
+            }
+            response.setContentType("application/json");
+            response.getWriter().write(gson.toJson(result));
+            BULK_PHASES.serialize(t);
+        } catch (Exception e) {
+            handleError(response, "Failed to import parties: " + e.getMessage());
+        }
+    }
+
+    private Map<Integer, List<Party>> readPartiesJson(BufferedReader reader) throws IOException {
+        Map<Integer, List<Party>> partiesByDistrict = new LinkedHashMap<>();
+        JsonReader json = new JsonReader(reader);
+        json.beginArray();
+        while (json.hasNext()) {
+            Integer districtId = null;
+            List<Party> parties = new ArrayList<>();
+            json.beginObject();
+            while (json.hasNext()) {
+                String field = json.nextName();
+                if (field.equals("districtId")) {
+                    districtId = json.nextInt();
+                } else if (field.equals("parties")) {
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        parties.add(createParty(json.nextString()));
+                    }
+                    json.endArray();
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endObject();
+            if (districtId == null) {
+                throw new IllegalArgumentException("Every entry needs a districtId");
+            }
+            partiesByDistrict.computeIfAbsent(districtId, id -> new ArrayList<>()).addAll(parties);
+        }
+        json.endArray();
+        return partiesByDistrict;
+    }
+
+    private Map<Integer, List<Party>> readPartiesCsv(BufferedReader reader) throws IOException {
+        Map<Integer, List<Party>> partiesByDistrict = new LinkedHashMap<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            List<String> fields = BulkImport.parseCsvLine(line);
+            if (lineNumber == 1 && fields.get(0).equalsIgnoreCase("districtId")) {
+                continue;
+            }
+            if (fields.size() < 2) {
+                throw new IllegalArgumentException("Line " + lineNumber + " must be districtId,partyName");
+            }
+            int districtId = parseIntOrThrow(fields.get(0), "District ID on line " + lineNumber);
+            partiesByDistrict.computeIfAbsent(districtId, id -> new ArrayList<>()).add(createParty(fields.get(1)));
+        }
+        return partiesByDistrict;
+    }
+
+    private Set<Integer> findMissingDistricts(Set<Integer> districtIds, Connection conn) throws IOException {
+        Set<Integer> missing = new HashSet<>(districtIds);
+        StringBuilder sql = new StringBuilder("SELECT id FROM districts WHERE id IN (");
+        for (int i = 0; i < districtIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (int districtId : districtIds) {
+                stmt.setInt(index++, districtId);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    missing.remove(rs.getInt(1));
+                }
+            }
+        } catch (Exception e) {
+            throw new IOException("Database error: " + e.getMessage());
+        }
+        return missing;
+    }
+
+    private boolean districtExists(int districtId, Connection conn) throws IOException {
+        try {
             String sql = "SELECT 1 FROM districts WHERE id = ?";
             try (PreparedStatement stmt = conn.prepareStatement(sql)) {
                 stmt.setInt(1, districtId);
@@ -61,34 +225,62 @@ public class PartyServlet extends HttpServlet {
     private List<Party> createParties(String[] partyNames) throws IllegalArgumentException {
         List<Party> parties = new ArrayList<>();
         for (String name : partyNames) {
-            if (name == null || name.trim().isEmpty()) {
-                throw new IllegalArgumentException("Party name cannot be empty");
-            }
-            Party party = new Party();
-            party.setName(name.trim());
-            parties.add(party);
+            parties.add(createParty(name));
         }
         return parties;
     }
 
-    private void savePartiesToDatabase(int districtId, List<Party> parties) throws IOException {
-        try (Connection conn = DatabaseUtil.getConnection()) {
+    private Party createParty(String name) throws IllegalArgumentException {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Party name cannot be empty");
+        }
+        Party party = new Party();
+        party.setName(name.trim());
+        return party;
+    }
+
+    // Inserts in batches of BulkImport.BATCH_SIZE and collects the generated ids, then bumps each district's
+    // version so cached results and ETags are refreshed. Returns the new versions; the caller owns the transaction.
+    static Map<Integer, Integer> savePartiesToDatabase(Map<Integer, List<Party>> partiesByDistrict, Connection conn) throws IOException {
+        try {
             String sql = "INSERT INTO parties (district_id, name, votes, qualified, first_round_seats, second_round_seats, bonus_seat, total_seats) VALUES (?, ?, 0, false, 0, 0, 0, 0)";
             try (PreparedStatement stmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
-                for (Party party : parties) {
-                    stmt.setInt(1, districtId);
-                    stmt.setString(2, party.getName());
-                    stmt.executeUpdate();
-                    try (ResultSet rs = stmt.getGeneratedKeys()) {
-                        if (rs.next()) party.setId(rs.getInt(1));
+                List<Party> pending = new ArrayList<>();
+                for (Map.Entry<Integer, List<Party>> entry : partiesByDistrict.entrySet()) {
+                    for (Party party : entry.getValue()) {
+                        stmt.setInt(1, entry.getKey());
+                        stmt.setString(2, party.getName());
+                        stmt.addBatch();
+                        pending.add(party);
+                        if (pending.size() == BulkImport.BATCH_SIZE) {
+                            BulkImport.executeBatch(stmt, pending, Party::setId);
+                        }
                     }
                 }
+                BulkImport.executeBatch(stmt, pending, Party::setId);
             }
+
+            try (PreparedStatement stmt = conn.prepareStatement("UPDATE districts SET version = version + 1 WHERE id = ?")) {
+                for (int districtId : partiesByDistrict.keySet()) {
+                    stmt.setInt(1, districtId);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            ResultSnapshots.markStale(conn, partiesByDistrict.keySet());
+            return DistrictRepository.fetchVersions(conn, partiesByDistrict.keySet());
         } catch (Exception e) {
             throw new IOException("Database error: " + e.getMessage());
         }
     }
 
+    // At the committed versions, so a result committed before the party change is not cached after it
+    private static void invalidate(Map<Integer, Integer> versions) {
+        for (Map.Entry<Integer, Integer> entry : versions.entrySet()) {
+            DistrictCache.getInstance().invalidate(entry.getKey(), entry.getValue());
+        }
+    }
+
     private int parseIntOrThrow(String value, String fieldName) throws IllegalArgumentException {
         try {
             return Integer.parseInt(value);
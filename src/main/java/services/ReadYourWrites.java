@@ -0,0 +1,114 @@
+package services;
+
+import database.ReplicaRouter;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Lets a client read its own writes when reads go to replicas, without server-side session state. Each write
+// answers with the district's committed version in X-District-Version ("id:version") and, while replicas are
+// configured, also adds it to a cookie of recent writes. Reads require those versions; API clients that do not
+// keep cookies can pass ?minVersion= with the districtId instead.
+final class ReadYourWrites {
+    static final String HEADER = "X-District-Version";
+
+    private static final String COOKIE = "district_versions";
+    private static final int MAX_ENTRIES = 32;
+    private static final int COOKIE_SECONDS = Integer.getInteger("readYourWrites.cookieSeconds", 300);
+
+    private ReadYourWrites() {
+    }
+
+    static void remember(HttpServletRequest request, HttpServletResponse response, int districtId, int version) {
+        remember(request, response, Collections.singletonMap(districtId, version));
+    }
+
+    // Call before the response body is written, as it sets headers
+    static void remember(HttpServletRequest request, HttpServletResponse response, Map<Integer, Integer> versions) {
+        if (versions.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Integer, Integer> entry : versions.entrySet()) {
+            ReplicaRouter.recordWrite(entry.getKey(), entry.getValue());
+            // Bulk writes leave the header out rather than list every district
+            if (versions.size() == 1) {
+                response.setHeader(HEADER, entry.getKey() + ":" + entry.getValue());
+            }
+        }
+        if (!ReplicaRouter.isEnabled()) {
+            return;
+        }
+
+        // Most recent writes last, so the oldest are dropped first once the cookie is full
+        Map<Integer, Integer> remembered = fromCookie(request);
+        for (Map.Entry<Integer, Integer> entry : versions.entrySet()) {
+            Integer previous = remembered.remove(entry.getKey());
+            remembered.put(entry.getKey(), previous == null ? entry.getValue() : Math.max(previous, entry.getValue()));
+        }
+        Iterator<Integer> oldest = remembered.keySet().iterator();
+        while (remembered.size() > MAX_ENTRIES) {
+            oldest.next();
+            oldest.remove();
+        }
+
+        StringBuilder value = new StringBuilder();
+        for (Map.Entry<Integer, Integer> entry : remembered.entrySet()) {
+            if (value.length() > 0) {
+                value.append('|');
+            }
+            value.append(entry.getKey()).append(':').append(entry.getValue());
+        }
+        Cookie cookie = new Cookie(COOKIE, value.toString());
+        cookie.setPath(request.getContextPath().isEmpty() ? "/" : request.getContextPath());
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge(COOKIE_SECONDS);
+        response.addCookie(cookie);
+    }
+
+    // Version the client must see for the district, or -1 if it has not written it
+    static int minVersion(HttpServletRequest request, int districtId) throws IllegalArgumentException {
+        Integer remembered = fromCookie(request).get(districtId);
+        int required = remembered == null ? -1 : remembered;
+        String value = request.getParameter("minVersion");
+        if (value != null && !value.trim().isEmpty()) {
+            required = Math.max(required, VoteParameters.parseIntOrThrow(value.trim(), "Min Version"));
+        }
+        return required;
+    }
+
+    // Every district version the client must see
+    static Map<Integer, Integer> minVersions(HttpServletRequest request) {
+        return fromCookie(request);
+    }
+
+    // Entries that do not parse are ignored; the cookie is only a hint for routing
+    private static Map<Integer, Integer> fromCookie(HttpServletRequest request) {
+        Map<Integer, Integer> versions = new LinkedHashMap<>();
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return versions;
+        }
+        for (Cookie cookie : cookies) {
+            if (!COOKIE.equals(cookie.getName()) || cookie.getValue() == null) {
+                continue;
+            }
+            for (String entry : cookie.getValue().split("\\|")) {
+                int colon = entry.indexOf(':');
+                if (colon <= 0) {
+                    continue;
+                }
+                try {
+                    versions.put(Integer.parseInt(entry.substring(0, colon)), Integer.parseInt(entry.substring(colon + 1)));
+                } catch (NumberFormatException ignored) {
+                    // Tampered or from an older format
+                }
+            }
+        }
+        return versions;
+    }
+}
@@ -0,0 +1,237 @@
+package services;
+
+import com.google.gson.Gson;
+import model.District;
+import model.Party;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fans committed results out to Server-Sent Events subscribers. Output uses non-blocking I/O, so no
+// container thread is held per subscriber; a subscriber whose buffer fills up is disconnected.
+class ResultBroadcaster {
+    private static final ResultBroadcaster INSTANCE = new ResultBroadcaster(
+            Integer.getInteger("sse.bufferSize", 64),
+            Integer.getInteger("sse.maxSubscribers", 10_000),
+            Long.getLong("sse.heartbeatMillis", 15_000L));
+
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // Newest version published per district
+    private final ConcurrentHashMap<Integer, Integer> versions = new ConcurrentHashMap<>();
+    private final Gson gson = new Gson();
+    private final ExecutorService fanOut;
+    private final ScheduledExecutorService heartbeat;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private volatile boolean closed;
+
+    ResultBroadcaster(int bufferSize, int maxSubscribers, long heartbeatMillis) {
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.fanOut = Executors.newSingleThreadExecutor(r -> daemon(r, "sse-fan-out"));
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "sse-heartbeat"));
+        heartbeat.scheduleWithFixedDelay(() -> broadcast(0, HEARTBEAT), heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    static ResultBroadcaster getInstance() {
+        return INSTANCE;
+    }
+
+    // districtId 0 subscribes to every district
+    boolean subscribe(AsyncContext context, int districtId) throws IOException {
+        if (closed || subscribers.size() >= maxSubscribers) {
+            return false;
+        }
+        Subscriber subscriber = new Subscriber(context, districtId, bufferSize);
+        subscribers.add(subscriber);
+        subscriber.out.setWriteListener(subscriber);
+        subscriber.send(": connected\n\n".getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    void unsubscribe(AsyncContext context) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.context == context) {
+                subscriber.close();
+            }
+        }
+    }
+
+    boolean hasSubscribers(int districtId) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.districtId == 0 || subscriber.districtId == districtId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Serialized once here and shared by every matching subscriber. Not every writer holds the district lock,
+    // so results can arrive out of commit order; one no newer than the last published is dropped. The check and
+    // the hand-off to the fan-out thread happen together, so events for a district leave in version order.
+    // After shutdown it does nothing, as the tally queue and cluster sync still commit while they drain.
+    void publish(District district) {
+        if (closed) {
+            return;
+        }
+        byte[] event = toEvent(district);
+        boolean[] queued = new boolean[1];
+        versions.compute(district.getId(), (id, last) -> {
+            if (last != null && last >= district.getVersion()) {
+                stale.incrementAndGet();
+                return last;
+            }
+            try {
+                fanOut.execute(() -> broadcast(id, event));
+            } catch (RejectedExecutionException e) {
+                // Shut down since the check above
+                return last;
+            }
+            queued[0] = true;
+            return district.getVersion();
+        });
+        if (queued[0]) {
+            published.incrementAndGet();
+        }
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("subscribers", subscribers.size());
+        stats.put("published", published.get());
+        stats.put("stale", stale.get());
+        stats.put("droppedSubscribers", dropped.get());
+        return stats;
+    }
+
+    // Called once by DatabaseLifecycleListener, as the broadcaster outlives any one servlet
+    void shutdown() {
+        closed = true;
+        heartbeat.shutdownNow();
+        fanOut.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close();
+        }
+    }
+
+    private void broadcast(int districtId, byte[] event) {
+        for (Subscriber subscriber : subscribers) {
+            if (districtId == 0 || subscriber.districtId == 0 || subscriber.districtId == districtId) {
+                subscriber.send(event);
+            }
+        }
+    }
+
+    private byte[] toEvent(District district) {
+        Map<String, Object> delta = new LinkedHashMap<>();
+        delta.put("districtId", district.getId());
+        delta.put("version", district.getVersion());
+        delta.put("totalVotes", district.getTotalVotes());
+        delta.put("validVotes", district.getValidVotes());
+        List<int[]> parties = new ArrayList<>();
+        for (Party party : district.getParties()) {
+            // [partyId, votes, totalSeats]
+            parties.add(new int[]{party.getId(), party.getVotes(), party.getTotalSeats()});
+        }
+        delta.put("parties", parties);
+        String event = "event: result\nid: " + district.getId() + "-" + district.getVersion()
+                + "\ndata: " + gson.toJson(delta) + "\n\n";
+        return event.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private final class Subscriber implements WriteListener {
+        final AsyncContext context;
+        final int districtId;
+        final ServletOutputStream out;
+        final Queue<byte[]> pending;
+        private boolean closed;
+
+        Subscriber(AsyncContext context, int districtId, int bufferSize) throws IOException {
+            this.context = context;
+            this.districtId = districtId;
+            this.out = context.getResponse().getOutputStream();
+            this.pending = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        void send(byte[] event) {
+            if (!pending.offer(event)) {
+                dropped.incrementAndGet();
+                close();
+                return;
+            }
+            drain();
+        }
+
+        @Override
+        public void onWritePossible() {
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            close();
+        }
+
+        // Writes while the connection accepts data; when it does not, the container calls onWritePossible later
+        private synchronized void drain() {
+            if (closed) {
+                return;
+            }
+            try {
+                while (out.isReady()) {
+                    byte[] next = pending.poll();
+                    if (next == null) {
+                        out.flush();
+                        return;
+                    }
+                    out.write(next);
+                }
+            } catch (IOException | IllegalStateException e) {
+                close();
+            }
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            subscribers.remove(this);
+            pending.clear();
+            try {
+                context.complete();
+            } catch (IllegalStateException ignored) {
+                // The request has already completed
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package services;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+@WebServlet(urlPatterns = "/api/votes/stream", asyncSupported = true)
+public class ResultStreamServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        int districtId;
+        try {
+            String value = request.getParameter("districtId");
+            districtId = value == null || value.trim().isEmpty() ? 0 : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            handleError(response, HttpServletResponse.SC_BAD_REQUEST, "District ID must be a valid integer");
+            return;
+        }
+
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("X-Accel-Buffering", "no");
+
+        AsyncContext context = request.startAsync();
+        context.setTimeout(0);
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                ResultBroadcaster.getInstance().unsubscribe(event.getAsyncContext());
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                ResultBroadcaster.getInstance().unsubscribe(event.getAsyncContext());
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                ResultBroadcaster.getInstance().unsubscribe(event.getAsyncContext());
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        if (!ResultBroadcaster.getInstance().subscribe(context, districtId)) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            context.complete();
+        }
+    }
+
+    private void handleError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
+        response.getWriter().write("Error: " + message);
+    }
+}
@@ -0,0 +1,166 @@
+package services;
+
+import allocation.ElectionSnapshot;
+import allocation.Scenario;
+import allocation.Simulator;
+import cache.DistrictCache;
+import com.google.gson.Gson;
+import database.DatabaseUtil;
+import database.DistrictRepository;
+import model.District;
+import model.Party;
+import model.ScenarioResult;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+// Read-only what-if analysis: POST {"scenarios": [{"name": "A+2", "shifts": {"A": 2.0}, "thresholdPercent": 5,
+// "method": "DHONDT"}, ...]} returns each scenario's seats against the current results. An optional "base"
+// array of districts with parties and votes replaces the stored results. Nothing is written to the database.
+@WebServlet(value = "/api/results/simulate", asyncSupported = true)
+public class SimulationServlet extends HttpServlet {
+    private final Gson gson = new Gson();
+    private final ForkJoinPool pool = new ForkJoinPool(
+            Integer.getInteger("simulation.parallelism", Runtime.getRuntime().availableProcessors()));
+    private final int maxScenarios = Integer.getInteger("simulation.maxScenarios", 1000);
+    // A caller-supplied base is run once per scenario, so its size is bounded like the scenario count
+    private final int maxBaseDistricts = Integer.getInteger("simulation.maxBaseDistricts", 1000);
+    private final int maxSeats = Integer.getInteger("simulation.maxSeats", 500);
+    private final int maxParties = Integer.getInteger("simulation.maxParties", 100);
+    private final long maxAgeMillis = Long.getLong("cache.districts.ttlMillis", 60_000L);
+
+    // Stored results stay valid until any district changes (the cache generation moves) or they age out
+    private volatile CachedSnapshot snapshot;
+
+    private static final class SimulationRequest {
+        List<District> base;
+        List<Scenario> scenarios;
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        AsyncDispatch.run(request, response, this::processPost);
+    }
+
+    private void processPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            SimulationRequest body = gson.fromJson(request.getReader(), SimulationRequest.class);
+            if (body == null || body.scenarios == null || body.scenarios.isEmpty()) {
+                handleError(response, "At least one scenario is required");
+                return;
+            }
+            if (body.scenarios.size() > maxScenarios) {
+                handleError(response, "At most " + maxScenarios + " scenarios are allowed per request");
+                return;
+            }
+            ElectionSnapshot base = body.base == null ? currentSnapshot() : ElectionSnapshot.of(validate(body.base));
+            if (base.getDistrictCount() == 0) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            long start = System.nanoTime();
+            List<ScenarioResult> results = Simulator.run(base, body.scenarios, pool);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("districts", base.getDistrictCount());
+            result.put("elapsedMillis", (System.nanoTime() - start) / 1_000_000.0);
+            result.put("scenarios", results);
+
+            response.setContentType("application/json");
+            response.getWriter().write(gson.toJson(result));
+        } catch (ExecutionException e) {
+            handleError(response, "Failed to run simulation: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            handleError(response, "Failed to run simulation: interrupted");
+        } catch (Exception e) {
+            handleError(response, "Failed to run simulation: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+    }
+
+    private List<District> validate(List<District> districts) {
+        if (districts.size() > maxBaseDistricts) {
+            throw new IllegalArgumentException("At most " + maxBaseDistricts + " base districts are allowed per request");
+        }
+        List<District> valid = new ArrayList<>(districts.size());
+        for (District district : districts) {
+            if (district == null || district.getSeats() <= 0 || district.getTotalVotes() < 0) {
+                throw new IllegalArgumentException("Every base district needs positive seats and non-negative totalVotes");
+            }
+            if (district.getSeats() > maxSeats) {
+                throw new IllegalArgumentException("At most " + maxSeats + " seats are allowed per base district");
+            }
+            if (district.getParties() == null) {
+                district.setParties(new ArrayList<>());
+            }
+            if (district.getParties().size() > maxParties) {
+                throw new IllegalArgumentException("At most " + maxParties + " parties are allowed per base district");
+            }
+            for (Party party : district.getParties()) {
+                if (party == null || party.getName() == null || party.getVotes() < 0) {
+                    throw new IllegalArgumentException("Every base party needs a name and non-negative votes");
+                }
+            }
+            valid.add(district);
+        }
+        return valid;
+    }
+
+    private ElectionSnapshot currentSnapshot() throws Exception {
+        DistrictCache cache = DistrictCache.getInstance();
+        CachedSnapshot current = snapshot;
+        if (isFresh(current, cache.getGeneration())) {
+            return current.snapshot;
+        }
+        synchronized (this) {
+            long generation = cache.getGeneration();
+            current = snapshot;
+            if (isFresh(current, generation)) {
+                return current.snapshot;
+            }
+            List<District> districts;
+            try (Connection conn = DatabaseUtil.getConnection()) {
+                districts = DistrictRepository.fetchAllWithParties(conn);
+            }
+            current = new CachedSnapshot(generation, ElectionSnapshot.of(districts));
+            snapshot = current;
+            return current.snapshot;
+        }
+    }
+
+    private boolean isFresh(CachedSnapshot current, long generation) {
+        return current != null && current.generation == generation
+                && System.currentTimeMillis() - current.computedAt < maxAgeMillis;
+    }
+
+    private void handleError(HttpServletResponse response, String message) throws IOException {
+        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        response.getWriter().write("Error: " + message);
+    }
+
+    private static final class CachedSnapshot {
+        final long generation;
+        final ElectionSnapshot snapshot;
+        final long computedAt = System.currentTimeMillis();
+
+        CachedSnapshot(long generation, ElectionSnapshot snapshot) {
+            this.generation = generation;
+            this.snapshot = snapshot;
+        }
+    }
+}
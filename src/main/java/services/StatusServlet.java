@@ -0,0 +1,38 @@
+package services;
+
+import audit.AuditLog;
+import cache.DistrictCache;
+import com.google.gson.Gson;
+import database.DatabaseUtil;
+import database.DistrictLocks;
+import database.ReplicaRouter;
+
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@WebServlet("/api/status")
+public class StatusServlet extends HttpServlet {
+    private final Gson gson = new Gson();
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("pool", DatabaseUtil.getPoolStats());
+        status.put("readRouting", ReplicaRouter.getStats());
+        status.put("districtCache", DistrictCache.getInstance().getStats());
+        status.put("clusterSync", ClusterSync.getInstance().getStats());
+        status.put("resultStream", ResultBroadcaster.getInstance().getStats());
+        status.put("tallyQueue", TallyQueue.getInstance().getStats());
+        status.put("auditLog", AuditLog.getInstance().getStats());
+        status.put("districtLocks", DistrictLocks.getStats());
+        status.put("async", AsyncDispatch.getStats());
+
+        response.setContentType("application/json");
+        response.getWriter().write(gson.toJson(status));
+    }
+}
@@ -0,0 +1,167 @@
+package services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Append-only log of accepted tallies. A submission line is written before the ticket is handed out and a
+// done line once it is committed or rejected; whatever has no done line is replayed on the next start.
+//   S <ticket> <districtId> <totalVotes> <partyId>:<votes>,...
+//   D <ticket>
+//
+// Submission lines are forced to disk as a group: a submitter that finds a force in progress waits for it,
+// and the next force covers every line written meanwhile, so concurrent submissions share one fsync.
+class TallyJournal {
+    private final Path path;
+    private final boolean fsync;
+    private FileChannel channel;
+    private int outstanding;
+    // Lines written so far, and how many of them the last force covered
+    private long written;
+    private volatile long forced;
+    // Not a monitor, so submitters waiting for a force do not pin virtual threads
+    private final ReentrantLock forceLock = new ReentrantLock();
+
+    TallyJournal(Path path, boolean fsync) {
+        this.path = path;
+        this.fsync = fsync;
+    }
+
+    // Returns the submissions left unfinished by the previous run and opens the journal for appending
+    synchronized List<TallyQueue.Submission> open() throws IOException {
+        List<TallyQueue.Submission> unfinished = new ArrayList<>();
+        if (Files.exists(path)) {
+            Map<String, TallyQueue.Submission> pending = new LinkedHashMap<>();
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(" ");
+                    try {
+                        if (fields[0].equals("S") && fields.length >= 4) {
+                            TallyQueue.Submission submission = parseSubmission(fields);
+                            pending.put(submission.ticket, submission);
+                        } else if (fields[0].equals("D") && fields.length == 2) {
+                            pending.remove(fields[1]);
+                        }
+                    } catch (RuntimeException e) {
+                        // A line torn by a crash mid-write; its ticket was never handed out
+                    }
+                }
+            }
+            unfinished.addAll(pending.values());
+        }
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        // Carry the unfinished submissions over into the fresh file
+        for (TallyQueue.Submission submission : unfinished) {
+            write(submissionLine(submission));
+        }
+        outstanding = unfinished.size();
+        force();
+        return unfinished;
+    }
+
+    // Writes the submission line without forcing it; pass the returned position to sync before handing out the ticket
+    synchronized long append(TallyQueue.Submission submission) throws IOException {
+        write(submissionLine(submission));
+        outstanding++;
+        return ++written;
+    }
+
+    // Returns once every line up to the given position is on disk
+    void sync(long position) throws IOException {
+        if (!fsync || forced >= position) {
+            return;
+        }
+        forceLock.lock();
+        try {
+            if (forced >= position) {
+                return;
+            }
+            long target;
+            synchronized (this) {
+                target = written;
+            }
+            channel.force(false);
+            forced = target;
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    synchronized void markDone(Collection<String> tickets) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (String ticket : tickets) {
+            lines.append("D ").append(ticket).append('\n');
+        }
+        outstanding -= tickets.size();
+        if (outstanding <= 0) {
+            // Nothing left to replay, so start over instead of growing forever
+            outstanding = 0;
+            channel.truncate(0);
+            channel.position(0);
+        } else {
+            write(lines.toString());
+        }
+        force();
+    }
+
+    synchronized void close() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException ignored) {
+            // Unfinished submissions are already on disk
+        }
+    }
+
+    private void write(String lines) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void force() throws IOException {
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    private static String submissionLine(TallyQueue.Submission submission) {
+        StringBuilder line = new StringBuilder("S ")
+                .append(submission.ticket).append(' ')
+                .append(submission.districtId).append(' ')
+                .append(submission.totalVotes).append(' ');
+        String separator = "";
+        for (Map.Entry<Integer, Integer> entry : submission.partyVotes.entrySet()) {
+            line.append(separator).append(entry.getKey()).append(':').append(entry.getValue());
+            separator = ",";
+        }
+        return line.append('\n').toString();
+    }
+
+    private static TallyQueue.Submission parseSubmission(String[] fields) {
+        Map<Integer, Integer> partyVotes = new TreeMap<>();
+        if (fields.length > 4) {
+            for (String pair : fields[4].split(",")) {
+                int colon = pair.indexOf(':');
+                partyVotes.put(Integer.parseInt(pair.substring(0, colon)), Integer.parseInt(pair.substring(colon + 1)));
+            }
+        }
+        return new TallyQueue.Submission(fields[1], Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), partyVotes);
+    }
+}
@@ -0,0 +1,606 @@
+package services;
+
+import allocation.AllocationEngine;
+import audit.AuditLog;
+import audit.AuditRecord;
+import cache.DistrictCache;
+import database.DatabaseUtil;
+import database.DistrictRepository;
+import database.ReplicaRouter;
+import database.ResultSnapshots;
+import database.StaleDistrictException;
+import model.District;
+import model.Party;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Write-behind mode for tallies. Submissions are journaled and queued, then a single writer drains the queue,
+// keeps only the latest tally per district (tallies are absolute counts) and commits each drained group in
+// one transaction. A full queue rejects new submissions instead of blocking request threads.
+//
+// Queued tickets are only known to the node that accepted them. Once finished, a ticket's outcome is stored in
+// tally_tickets (in the same transaction as a committed tally), so a status poll can land on any node.
+class TallyQueue {
+    private static final TallyQueue INSTANCE = new TallyQueue(
+            Integer.getInteger("votes.async.queueSize", 10_000),
+            Integer.getInteger("votes.async.maxGroupSize", 200),
+            Integer.getInteger("votes.async.ticketRetention", 100_000),
+            // Under the user's home rather than a temporary directory, which may be cleared on reboot
+            Paths.get(System.getProperty("votes.async.journal",
+                    Paths.get(System.getProperty("user.home"), "voting-system", "tally.journal").toString())),
+            Boolean.parseBoolean(System.getProperty("votes.async.fsync", "true")));
+
+    private static final int MAX_STALE_RETRIES = 3;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final long TICKET_TTL_MILLIS = Long.getLong("votes.async.ticketTtlMillis", 86_400_000L);
+    private static final long PRUNE_INTERVAL_MILLIS = 600_000;
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    private static final String STORE_TICKET = "INSERT INTO tally_tickets (ticket, district_id, status, version, error, finished_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE status = VALUES(status), version = VALUES(version), "
+            + "error = VALUES(error), finished_at = VALUES(finished_at)";
+
+    enum Status { QUEUED, COMMITTED, FAILED }
+
+    private final int maxGroupSize;
+    private final int ticketRetention;
+    private final BlockingQueue<Submission> queue;
+    private final TallyJournal journal;
+    // Start time plus a random part, so tickets from nodes started in the same millisecond do not collide
+    private final String ticketPrefix = Long.toString(System.currentTimeMillis(), 36) + "."
+            + Integer.toString(ThreadLocalRandom.current().nextInt(36 * 36 * 36 * 36), 36) + "-";
+    private final AtomicLong ticketSequence = new AtomicLong();
+    // Oldest tickets are forgotten first once the retention limit is reached
+    private final LinkedHashMap<String, Ticket> tickets = new LinkedHashMap<>();
+
+    private volatile boolean running;
+    private Thread writer;
+    private long lastPrune;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    TallyQueue(int queueSize, int maxGroupSize, int ticketRetention, Path journalPath, boolean fsync) {
+        this.maxGroupSize = maxGroupSize;
+        this.ticketRetention = ticketRetention;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.journal = new TallyJournal(journalPath, fsync);
+    }
+
+    static TallyQueue getInstance() {
+        return INSTANCE;
+    }
+
+    // Replays submissions the previous run accepted but never committed, then starts the writer
+    synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        List<Submission> unfinished = journal.open();
+        running = true;
+        writer = new Thread(this::drain, "tally-writer");
+        writer.setDaemon(true);
+        writer.start();
+        for (Submission submission : unfinished) {
+            // The previous run may have committed it without getting to mark it done
+            submission.recheck = true;
+            track(submission.ticket, submission.districtId);
+            try {
+                queue.put(submission);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Stops taking submissions and gives the writer a moment to flush; anything left is replayed on restart
+    void shutdown() {
+        Thread w;
+        synchronized (this) {
+            running = false;
+            w = writer;
+        }
+        if (w != null) {
+            try {
+                w.join(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        journal.close();
+    }
+
+    // Returns the ticket id, or null when the queue is full. Only the journal write is serialized; the fsync
+    // that makes it durable happens outside the lock and is shared with concurrent submissions.
+    String submit(int districtId, int totalVotes, Map<Integer, Integer> partyVotes) throws IOException {
+        Submission submission;
+        long position;
+        synchronized (this) {
+            if (!running) {
+                throw new IllegalStateException("Tally queue is not running");
+            }
+            // Only the writer removes entries, so the capacity checked here cannot be taken by another submitter
+            if (queue.remainingCapacity() == 0) {
+                rejected.increment();
+                return null;
+            }
+            submission = new Submission(ticketPrefix + ticketSequence.incrementAndGet(), districtId, totalVotes, partyVotes);
+            position = journal.append(submission);
+            track(submission.ticket, districtId);
+            queue.add(submission);
+        }
+        // The writer may commit the tally before this returns; the ticket is handed out only once it is durable
+        journal.sync(position);
+        accepted.increment();
+        return submission.ticket;
+    }
+
+    // Returns a copy, since the writer keeps updating the tracked ticket; null when this node does not track it
+    Ticket getTicket(String id) {
+        synchronized (tickets) {
+            Ticket ticket = tickets.get(id);
+            return ticket == null ? null : ticket.copy();
+        }
+    }
+
+    // A finished ticket from any node, or null when it is unknown, still queued elsewhere or expired
+    Ticket loadTicket(String id) throws SQLException {
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            return loadTickets(conn, Collections.singletonList(id)).get(id);
+        }
+    }
+
+    private static Map<String, Ticket> loadTickets(Connection conn, List<String> ids) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT ticket, district_id, status, version, error FROM tally_tickets WHERE ticket IN (");
+        for (int i = 0; i < ids.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        Map<String, Ticket> tickets = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql.append(')').toString())) {
+            for (int i = 0; i < ids.size(); i++) {
+                stmt.setString(i + 1, ids.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Ticket ticket = new Ticket(rs.getString(1), rs.getInt(2));
+                    ticket.status = Status.valueOf(rs.getString(3));
+                    int version = rs.getInt(4);
+                    ticket.version = rs.wasNull() ? null : version;
+                    ticket.error = rs.getString(5);
+                    tickets.put(ticket.ticket, ticket);
+                }
+            }
+        }
+        return tickets;
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("depth", queue.size());
+        stats.put("capacity", queue.size() + queue.remainingCapacity());
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("committed", committed.sum());
+        stats.put("failed", failed.sum());
+        stats.put("groups", groups.sum());
+        stats.put("coalesced", coalesced.sum());
+        return stats;
+    }
+
+    int depth() {
+        return queue.size();
+    }
+
+    private void track(String id, int districtId) {
+        synchronized (tickets) {
+            tickets.put(id, new Ticket(id, districtId));
+            Iterator<Ticket> it = tickets.values().iterator();
+            while (tickets.size() > ticketRetention && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    private void drain() {
+        List<Submission> group = new ArrayList<>(maxGroupSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                pruneTickets();
+                Submission first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                queue.drainTo(group, maxGroupSize - 1);
+                commitGroup(group);
+                group.clear();
+            } catch (InterruptedException e) {
+                return;
+            } catch (SQLException e) {
+                // The database is unreachable; keep the group and try it again. A commit that failed to
+                // answer may still have gone through, so the retry checks first.
+                if (!running) {
+                    return;
+                }
+                recheck(group);
+                sleepBeforeRetry();
+                retryGroup(group);
+            } catch (Exception e) {
+                abandon(group, e);
+            }
+        }
+    }
+
+    private void retryGroup(List<Submission> group) {
+        while (running && !group.isEmpty()) {
+            try {
+                commitGroup(group);
+                group.clear();
+            } catch (SQLException e) {
+                recheck(group);
+                sleepBeforeRetry();
+            } catch (Exception e) {
+                abandon(group, e);
+            }
+        }
+    }
+
+    // For failures other than the database being unreachable, such as the journal failing to mark a group done.
+    // Part of the group may have been committed before the failure, so outcomes stored in tally_tickets are taken
+    // as they are and everything else is failed. Tickets that cannot be settled either way stay queued here and
+    // unfinished in the journal, and are checked again on the next start.
+    private void abandon(List<Submission> group, Exception cause) {
+        recheck(group);
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            settle(group, conn);
+            for (Submission submission : group) {
+                failedTickets(submission.districtId, Collections.singletonList(submission.ticket),
+                        "Tally could not be applied: " + cause.getMessage(), conn);
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            // Left for the next start, as above
+        }
+        group.clear();
+    }
+
+    private static void recheck(List<Submission> group) {
+        for (Submission submission : group) {
+            submission.recheck = true;
+        }
+    }
+
+    private void sleepBeforeRetry() {
+        try {
+            Thread.sleep(RETRY_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Throws SQLException when the database cannot be reached, so the caller can retry the whole group
+    private void commitGroup(List<Submission> group) throws SQLException, IOException {
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            settle(group, conn);
+            if (group.isEmpty()) {
+                return;
+            }
+            // The group's submissions per district in queue order, in district id order so row locks are always
+            // taken in the same order
+            Map<Integer, List<Submission>> byDistrict = new TreeMap<>();
+            Map<Integer, List<String>> ticketsByDistrict = new TreeMap<>();
+            for (Submission submission : group) {
+                byDistrict.computeIfAbsent(submission.districtId, id -> new ArrayList<>()).add(submission);
+                ticketsByDistrict.computeIfAbsent(submission.districtId, id -> new ArrayList<>()).add(submission.ticket);
+            }
+            coalesced.add(group.size() - byDistrict.size());
+
+            Map<Integer, District> written = new LinkedHashMap<>();
+            Map<Integer, List<AuditRecord>> records = new HashMap<>();
+            ResultSnapshots.LeaderboardDeltas deltas = new ResultSnapshots.LeaderboardDeltas();
+            conn.setAutoCommit(false);
+            try {
+                for (Map.Entry<Integer, List<Submission>> entry : byDistrict.entrySet()) {
+                    List<AuditRecord> audit = new ArrayList<>();
+                    written.put(entry.getKey(), apply(entry.getValue(), conn, deltas, audit));
+                    records.put(entry.getKey(), audit);
+                }
+                deltas.apply(conn);
+                storeCommitted(conn, written.values(), ticketsByDistrict);
+                conn.commit();
+                groups.increment();
+            } catch (Exception e) {
+                conn.rollback();
+                written.clear();
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+            if (written.isEmpty()) {
+                // One bad tally must not hold back the rest of the group, so fall back to a transaction each
+                for (List<Submission> submissions : byDistrict.values()) {
+                    commitAlone(submissions, conn);
+                }
+                return;
+            }
+            for (District district : written.values()) {
+                published(district, ticketsByDistrict.get(district.getId()), records.get(district.getId()));
+            }
+        }
+    }
+
+    // Submissions that may already have been applied are looked up in tally_tickets, which is written in the
+    // transaction that applies them, and the ones found are finished from the stored outcome. Applying one again
+    // would not be harmless: a tally is an absolute count, so an old one would overwrite any newer tally.
+    private void settle(List<Submission> group, Connection conn) throws SQLException, IOException {
+        List<String> ids = new ArrayList<>();
+        for (Submission submission : group) {
+            if (submission.recheck) {
+                ids.add(submission.ticket);
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        Map<String, Ticket> stored = loadTickets(conn, ids);
+        for (Iterator<Submission> it = group.iterator(); it.hasNext(); ) {
+            Submission submission = it.next();
+            submission.recheck = false;
+            Ticket ticket = stored.get(submission.ticket);
+            if (ticket == null) {
+                continue;
+            }
+            it.remove();
+            List<String> done = finish(Collections.singletonList(submission.ticket), ticket.status, ticket.version, ticket.error);
+            (ticket.status == Status.COMMITTED ? committed : failed).add(done.size());
+            journal.markDone(done);
+        }
+    }
+
+    // The submissions of one district, in queue order
+    private void commitAlone(List<Submission> submissions, Connection conn) throws SQLException, IOException {
+        int districtId = submissions.get(0).districtId;
+        List<String> ids = new ArrayList<>();
+        for (Submission submission : submissions) {
+            ids.add(submission.ticket);
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                District district;
+                List<AuditRecord> audit = new ArrayList<>();
+                conn.setAutoCommit(false);
+                try {
+                    district = apply(submissions, conn, null, audit);
+                    storeCommitted(conn, Collections.singletonList(district), Collections.singletonMap(district.getId(), ids));
+                    conn.commit();
+                } catch (Exception e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+                published(district, ids, audit);
+                return;
+            } catch (StaleDistrictException e) {
+                if (attempt == MAX_STALE_RETRIES) {
+                    failedTickets(districtId, ids, e.getMessage(), conn);
+                    return;
+                }
+            } catch (SQLException e) {
+                if (isConnectionFailure(e)) {
+                    throw e;
+                }
+                if (DatabaseUtil.isRolledBack(e) && attempt < MAX_STALE_RETRIES) {
+                    continue;
+                }
+                failedTickets(districtId, ids, e.getMessage(), conn);
+                return;
+            } catch (Exception e) {
+                failedTickets(districtId, ids, e.getMessage(), conn);
+                return;
+            }
+        }
+    }
+
+    // SQLState class 08 is a connection exception
+    private static boolean isConnectionFailure(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("08");
+    }
+
+    // Applies one district's submissions in queue order and adds an audit record per submission to audit, for
+    // after the commit. With deltas, the leaderboard changes are left for the caller to apply.
+    private District apply(List<Submission> submissions, Connection conn, ResultSnapshots.LeaderboardDeltas deltas,
+                           List<AuditRecord> audit) throws Exception {
+        int districtId = submissions.get(0).districtId;
+        District district = DistrictRepository.fetchDistrictForUpdate(conn, districtId);
+        if (district == null) {
+            throw new IllegalArgumentException("District with ID " + districtId + " not found");
+        }
+        for (Submission submission : submissions) {
+            audit.add(overlay(district, submission));
+        }
+        AllocationEngine.calculateResults(district);
+        DistrictRepository.writeDistrict(conn, district, deltas);
+        return district;
+    }
+
+    // A tally only names some parties, so the others keep their counts. Returns the record of the counts this
+    // submission leaves, at the version the district is about to be written at.
+    static AuditRecord overlay(District district, Submission submission) {
+        district.setTotalVotes(submission.totalVotes);
+        for (Party party : district.getParties()) {
+            Integer votes = submission.partyVotes.get(party.getId());
+            if (votes != null) {
+                party.setVotes(votes);
+            }
+        }
+        return AuditRecord.tally(AuditRecord.Kind.ASYNC_TALLY, district.getId(), district.getVersion() + 1,
+                submission.totalVotes, district.getParties(), submission.ticket);
+    }
+
+    private void published(District district, List<String> ids, List<AuditRecord> records) throws IOException {
+        district.setVersion(district.getVersion() + 1);
+        ReplicaRouter.recordWrite(district.getId(), district.getVersion());
+        DistrictCache.getInstance().put(district);
+        ResultBroadcaster.getInstance().publish(district);
+        // One per ticket, all at the committed version; the last holds the committed counts
+        for (AuditRecord record : records) {
+            AuditLog.getInstance().append(record);
+        }
+        List<String> done = finish(ids, Status.COMMITTED, district.getVersion(), null);
+        committed.add(done.size());
+        journal.markDone(done);
+    }
+
+    // Stored before the journal is marked, so a failure that never reaches the journal is not replayed as a tally
+    private void failedTickets(int districtId, List<String> ids, String error, Connection conn) throws IOException {
+        try (PreparedStatement stmt = conn.prepareStatement(STORE_TICKET)) {
+            long now = System.currentTimeMillis();
+            for (String id : ids) {
+                bindTicket(stmt, id, districtId, Status.FAILED, null, error, now);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        } catch (SQLException e) {
+            // The failure is still reported by this node until the ticket is forgotten
+        }
+        List<String> done = finish(ids, Status.FAILED, null, error);
+        failed.add(done.size());
+        journal.markDone(done);
+    }
+
+    // Part of the transaction that commits the tallies, so a ticket is never reported committed before they are
+    private void storeCommitted(Connection conn, Collection<District> districts, Map<Integer, List<String>> ticketsByDistrict)
+            throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(STORE_TICKET)) {
+            long now = System.currentTimeMillis();
+            for (District district : districts) {
+                for (String id : ticketsByDistrict.get(district.getId())) {
+                    bindTicket(stmt, id, district.getId(), Status.COMMITTED, district.getVersion() + 1, null, now);
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private static void bindTicket(PreparedStatement stmt, String id, int districtId, Status status, Integer version,
+                                   String error, long finishedAt) throws SQLException {
+        stmt.setString(1, id);
+        stmt.setInt(2, districtId);
+        stmt.setString(3, status.name());
+        if (version == null) {
+            stmt.setNull(4, Types.INTEGER);
+        } else {
+            stmt.setInt(4, version);
+        }
+        stmt.setString(5, error == null || error.length() <= MAX_ERROR_LENGTH ? error : error.substring(0, MAX_ERROR_LENGTH));
+        stmt.setLong(6, finishedAt);
+    }
+
+    // Runs on the writer between groups; a failed attempt waits for the next interval
+    private void pruneTickets() {
+        long now = System.currentTimeMillis();
+        if (now - lastPrune < PRUNE_INTERVAL_MILLIS) {
+            return;
+        }
+        lastPrune = now;
+        try (Connection conn = DatabaseUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("DELETE FROM tally_tickets WHERE finished_at < ?")) {
+            stmt.setLong(1, now - TICKET_TTL_MILLIS);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            // Expired tickets only take space
+        }
+    }
+
+    // Returns the tickets that were still queued, so a retried group does not finish a ticket twice
+    private List<String> finish(List<String> ids, Status status, Integer version, String error) {
+        List<String> done = new ArrayList<>(ids.size());
+        synchronized (tickets) {
+            for (String id : ids) {
+                Ticket ticket = tickets.get(id);
+                if (ticket == null || ticket.status == Status.QUEUED) {
+                    done.add(id);
+                }
+                if (ticket != null && ticket.status == Status.QUEUED) {
+                    ticket.status = status;
+                    ticket.version = version;
+                    ticket.error = error;
+                }
+            }
+        }
+        return done;
+    }
+
+    static final class Submission {
+        final String ticket;
+        final int districtId;
+        final int totalVotes;
+        final Map<Integer, Integer> partyVotes;
+        // Set when the submission may already have been committed, so tally_tickets is checked before applying it;
+        // only touched by the writer once queued
+        boolean recheck;
+
+        Submission(String ticket, int districtId, int totalVotes, Map<Integer, Integer> partyVotes) {
+            this.ticket = ticket;
+            this.districtId = districtId;
+            this.totalVotes = totalVotes;
+            this.partyVotes = partyVotes;
+        }
+    }
+
+    // Serialized as the ticket status response; fields are only changed under the tickets lock
+    static final class Ticket {
+        private final String ticket;
+        private final int districtId;
+        private Status status = Status.QUEUED;
+        private Integer version;
+        private String error;
+
+        Ticket(String ticket, int districtId) {
+            this.ticket = ticket;
+            this.districtId = districtId;
+        }
+
+        int getDistrictId() { return districtId; }
+        Status getStatus() { return status; }
+        // Committed version of the district, once the tally is committed
+        Integer getVersion() { return version; }
+
+        Ticket copy() {
+            Ticket copy = new Ticket(ticket, districtId);
+            copy.status = status;
+            copy.version = version;
+            copy.error = error;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package services;
+
+import model.District;
+import model.Party;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Turns tally request parameters (party name -> votes) into party updates
+public final class VoteParameters {
+
+    private VoteParameters() {
+    }
+
+    // Sets each named party's absolute vote count; parameters in ignored are skipped
+    public static void applyPartyVotes(Map<String, String[]> parameterMap, District district, Set<String> ignored)
+            throws IllegalArgumentException {
+        Map<Integer, Integer> partyVotes = parsePartyVotes(parameterMap, district, ignored);
+        for (Party party : district.getParties()) {
+            Integer votes = partyVotes.get(party.getId());
+            if (votes != null) {
+                party.setVotes(votes);
+            }
+        }
+    }
+
+    // Maps party id to the votes given for it, whether absolute counts or batch increments, in id order so
+    // concurrent batches lock party rows in the same order. Names are trimmed, so a party given twice (as "A"
+    // and " A") is refused rather than having one count silently added to or replace the other.
+    public static Map<Integer, Integer> parsePartyVotes(Map<String, String[]> parameterMap, District district, Set<String> ignored)
+            throws IllegalArgumentException {
+        Map<String, Party> partiesByName = indexByName(district);
+        Map<Integer, Integer> partyVotes = new TreeMap<>();
+        for (Map.Entry<String, String[]> entry : parameterMap.entrySet()) {
+            String partyName = entry.getKey().trim();
+            String[] votesStr = entry.getValue();
+            if (ignored.contains(partyName) || votesStr == null || votesStr.length == 0) {
+                continue;
+            }
+
+            int votes = parseIntOrThrow(votesStr[0], "Votes for " + partyName);
+            if (votes < 0) {
+                throw new IllegalArgumentException("Votes for " + partyName + " cannot be negative");
+            }
+            Party party = partiesByName.get(partyName);
+            if (party == null) {
+                throw new IllegalArgumentException("Party " + partyName + " not found in district");
+            }
+            if (partyVotes.putIfAbsent(party.getId(), votes) != null) {
+                throw new IllegalArgumentException("Votes for " + partyName + " are given more than once");
+            }
+        }
+        return partyVotes;
+    }
+
+    public static int parseIntOrThrow(String value, String fieldName) throws IllegalArgumentException {
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException(fieldName + " is required");
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(fieldName + " must be a valid integer");
+        }
+    }
+
+    // First party wins on duplicate names, as the previous linear search did
+    private static Map<String, Party> indexByName(District district) {
+        Map<String, Party> partiesByName = new HashMap<>(district.getParties().size() * 2);
+        for (Party party : district.getParties()) {
+            partiesByName.putIfAbsent(party.getName(), party);
+        }
+        return partiesByName;
+    }
+}
@@ -1,9 +1,19 @@
 package services;
 
+import allocation.AllocationEngine;
+import audit.AuditLog;
+import audit.AuditRecord;
+import cache.DistrictCache;
 import com.google.gson.Gson;
 import database.DatabaseUtil;
+import database.DistrictBusyException;
+import database.DistrictLocks;
+import database.DistrictRepository;
+import database.ReplicaRouter;
+import database.ResultSnapshots;
+import database.StaleDistrictException;
+import metrics.Phases;
 import model.District;
-import model.Party;
 
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -12,268 +22,444 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
-@WebServlet("/api/votes")
+@WebServlet(urlPatterns = {"/api/votes", "/api/votes/batch", "/api/votes/ticket"}, asyncSupported = true)
 public class VoteServlet extends HttpServlet {
+    private static final Set<String> TALLY_PARAMETERS = new HashSet<>(Arrays.asList("districtId", "totalVotes", "async"));
+    private static final Set<String> BATCH_PARAMETERS = new HashSet<>(
+            Arrays.asList("districtId", "stationId", "batchId", "totalVotes", "finalize"));
+
+    private static final Phases POST_PHASES = new Phases("/api/votes", "POST");
+    private static final Phases BATCH_PHASES = new Phases("/api/votes/batch", "POST");
+    private static final Phases GET_PHASES = new Phases("/api/votes", "GET");
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+
     private final Gson gson = new Gson();
+    private final long recomputeIntervalMillis = Long.getLong("votes.recomputeIntervalMillis", 5_000L);
+    private final Map<Integer, Long> lastRecompute = new ConcurrentHashMap<>();
 
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        AsyncDispatch.run(request, response, this::processPost);
+    }
+
+    private void processPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (request.getServletPath().endsWith("/batch")) {
+            doPostBatch(request, response);
+            return;
+        }
+        if (Boolean.parseBoolean(request.getParameter("async"))) {
+            doPostAsync(request, response);
+            return;
+        }
         try {
+            long t = System.nanoTime();
             int districtId = parseIntOrThrow(request.getParameter("districtId"), "District ID");
-            District district = fetchDistrictById(districtId);
-            if (district == null) {
-                handleError(response, "District with ID " + districtId + " not found");
-                return;
-            }
-
             int totalVotes = parseIntOrThrow(request.getParameter("totalVotes"), "Total Votes");
-            district.setTotalVotes(totalVotes);
 
-            updatePartyVotes(request.getParameterMap(), district);
-            calculateResults(district);
-            updateDistrictInDatabase(district);
+            // Same-district submissions take turns from the read through to the commit; the row lock
+            // covers writers on other nodes, and the version check remains as a last line of defence.
+            // The connection is borrowed once the lock is held, so waiters do not tie up the pool.
+            District district;
+            try (DistrictLocks.Held held = DistrictLocks.lock(districtId);
+                 Connection conn = DatabaseUtil.getConnection()) {
+                conn.setAutoCommit(false);
+                try {
+                    district = lockDistrict(districtId, conn);
+                    t = POST_PHASES.db(t);
+                    if (district == null) {
+                        conn.rollback();
+                        handleError(response, "District with ID " + districtId + " not found");
+                        return;
+                    }
+                    district.setTotalVotes(totalVotes);
+
+                    VoteParameters.applyPartyVotes(request.getParameterMap(), district, TALLY_PARAMETERS);
+                    AllocationEngine.calculateResults(district);
+                    t = POST_PHASES.compute(t);
+                    writeDistrict(district, conn);
+                    conn.commit();
+                    t = POST_PHASES.db(t);
+                } catch (Exception e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+                district.setVersion(district.getVersion() + 1);
+                // Batches, async tallies and party changes do not take the district lock, so the cache and the
+                // broadcaster drop anything older than what they already hold rather than rely on call order
+                DistrictCache.getInstance().put(district);
+                ResultBroadcaster.getInstance().publish(district);
+                AuditLog.getInstance().append(AuditRecord.tally(AuditRecord.Kind.TALLY, districtId,
+                        district.getVersion(), totalVotes, district.getParties(), null));
+            }
+            ReadYourWrites.remember(request, response, districtId, district.getVersion());
 
+            t = System.nanoTime();
             response.setContentType("application/json");
             response.getWriter().write(gson.toJson(district));
+            POST_PHASES.serialize(t);
+        } catch (StaleDistrictException e) {
+            DistrictCache.getInstance().invalidate(e.getDistrictId());
+            handleError(response, HttpServletResponse.SC_CONFLICT, "Failed to process votes: " + e.getMessage());
+        } catch (DistrictBusyException e) {
+            response.setHeader("Retry-After", "1");
+            handleError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Failed to process votes: " + e.getMessage());
         } catch (Exception e) {
             handleError(response, "Failed to process votes: " + e.getMessage());
         }
     }
 
-    @Override
-    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-        try {
+    // Applies one polling-station batch of per-party increments. Batches are idempotent by batchId, counters
+    // are bumped in SQL, and seats are only reallocated on finalize=true or once per recompute interval.
+    private void doPostBatch(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (Connection conn = DatabaseUtil.getConnection()) {
             int districtId = parseIntOrThrow(request.getParameter("districtId"), "District ID");
-            District district = fetchDistrictById(districtId);
-            if (district == null) {
+            String stationId = requireParameter(request, "stationId", "Station ID");
+            String batchId = requireParameter(request, "batchId", "Batch ID");
+            int totalVotes = parseIntOrThrow(request.getParameter("totalVotes"), "Total Votes");
+            boolean finalize = Boolean.parseBoolean(request.getParameter("finalize"));
+            if (totalVotes < 0) {
+                throw new IllegalArgumentException("Total Votes cannot be negative");
+            }
+
+            // Party names rarely change, so they are resolved to ids from the cached district
+            District current = DistrictCache.getInstance().get(districtId, this::fetchDistrictById);
+            if (current == null) {
                 handleError(response, "District with ID " + districtId + " not found");
                 return;
             }
+            Map<Integer, Integer> increments = VoteParameters.parsePartyVotes(request.getParameterMap(), current, BATCH_PARAMETERS);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("batchId", batchId);
+            District recomputed = null;
+            int version;
+            int incrementVersion;
+            long t = System.nanoTime();
+            conn.setAutoCommit(false);
+            try {
+                if (!recordBatch(batchId, districtId, stationId, totalVotes, conn)) {
+                    conn.rollback();
+                    result.put("duplicate", true);
+                    response.setContentType("application/json");
+                    response.getWriter().write(gson.toJson(result));
+                    return;
+                }
+                version = applyIncrements(districtId, totalVotes, increments, conn);
+                incrementVersion = version;
+                if (finalize || recomputeDue(districtId)) {
+                    recomputed = fetchDistrictById(districtId, conn);
+                    t = BATCH_PHASES.db(t);
+                    AllocationEngine.calculateResults(recomputed);
+                    t = BATCH_PHASES.compute(t);
+                    DistrictRepository.writeDistrict(conn, recomputed);
+                    version = recomputed.getVersion() + 1;
+                }
+                conn.commit();
+                BATCH_PHASES.db(t);
+            } catch (SQLException e) {
+                conn.rollback();
+                if (DatabaseUtil.isRolledBack(e)) {
+                    throw new DistrictBusyException(districtId, e);
+                }
+                throw e;
+            } catch (Exception e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            // At the version the counts moved; a recompute only bumps the version again
+            AuditLog.getInstance().append(AuditRecord.batch(districtId, incrementVersion, totalVotes, increments,
+                    batchId, stationId));
+
+            if (recomputed != null) {
+                recomputed.setVersion(recomputed.getVersion() + 1);
+                lastRecompute.put(districtId, System.currentTimeMillis());
+                DistrictCache.getInstance().put(recomputed);
+                ResultBroadcaster.getInstance().publish(recomputed);
+            } else {
+                DistrictCache.getInstance().invalidate(districtId, version);
+            }
+            ReadYourWrites.remember(request, response, districtId, version);
+
+            result.put("duplicate", false);
+            result.put("recomputed", recomputed != null);
+            if (recomputed != null) {
+                result.put("district", recomputed);
+            }
+            t = System.nanoTime();
             response.setContentType("application/json");
-            response.getWriter().write(gson.toJson(district));
+            response.getWriter().write(gson.toJson(result));
+            BATCH_PHASES.serialize(t);
+        } catch (DistrictBusyException e) {
+            response.setHeader("Retry-After", "1");
+            handleError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Failed to process vote batch: " + e.getMessage());
         } catch (Exception e) {
-            handleError(response, "Failed to fetch district: " + e.getMessage());
+            handleError(response, "Failed to process vote batch: " + e.getMessage());
         }
     }
 
-    private District fetchDistrictById(int id) throws IOException {
-        District district = null;
-        try (Connection conn = DatabaseUtil.getConnection()) {
-            String sql = "SELECT * FROM districts WHERE id = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setInt(1, id);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        district = new District();
-                        district.setId(rs.getInt("id"));
-                        district.setName(rs.getString("name"));
-                        district.setSeats(rs.getInt("seats"));
-                        district.setTotalVotes(rs.getInt("total_votes"));
-                        district.setValidVotes(rs.getInt("valid_votes"));
-                        district.setDisqualifiedVotes(rs.getInt("disqualified_votes"));
-                        district.setVoteThreshold(rs.getInt("vote_threshold"));
-                    }
-                }
+    // Validates the tally against the cached district and queues it for the write-behind writer. Answers
+    // 202 with a ticket to poll at /api/votes/ticket, or 429 when the queue is full.
+    private void doPostAsync(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            int districtId = parseIntOrThrow(request.getParameter("districtId"), "District ID");
+            int totalVotes = parseIntOrThrow(request.getParameter("totalVotes"), "Total Votes");
+            District current = DistrictCache.getInstance().get(districtId, this::fetchDistrictById);
+            if (current == null) {
+                handleError(response, "District with ID " + districtId + " not found");
+                return;
             }
+            Map<Integer, Integer> partyVotes = VoteParameters.parsePartyVotes(request.getParameterMap(), current, TALLY_PARAMETERS);
 
-            if (district != null) {
-                district.setParties(fetchPartiesByDistrictId(id, conn));
+            String ticket = TallyQueue.getInstance().submit(districtId, totalVotes, partyVotes);
+            if (ticket == null) {
+                response.setHeader("Retry-After", "1");
+                handleError(response, SC_TOO_MANY_REQUESTS, "Tally queue is full, retry later");
+                return;
             }
+            String statusUrl = request.getContextPath() + "/api/votes/ticket?id=" + ticket;
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("ticket", ticket);
+            result.put("status", TallyQueue.Status.QUEUED);
+            result.put("statusUrl", statusUrl);
+            response.setStatus(HttpServletResponse.SC_ACCEPTED);
+            response.setHeader("Location", statusUrl);
+            response.setContentType("application/json");
+            response.getWriter().write(gson.toJson(result));
+        } catch (IllegalStateException e) {
+            handleError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Failed to queue votes: " + e.getMessage());
         } catch (Exception e) {
-            throw new IOException("Database error: " + e.getMessage());
+            handleError(response, "Failed to queue votes: " + e.getMessage());
         }
-        return district;
     }
 
-    private List<Party> fetchPartiesByDistrictId(int districtId, Connection conn) throws IOException {
-        List<Party> parties = new ArrayList<>();
-        try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM parties WHERE district_id = ?")) {
-            stmt.setInt(1, districtId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    Party party = new Party();
-                    party.setId(rs.getInt("id"));
-                    party.setName(rs.getString("name"));
-                    party.setVotes(rs.getInt("votes"));
-                    party.setQualified(rs.getBoolean("qualified"));
-                    party.setFirstRoundSeats(rs.getInt("first_round_seats"));
-                    party.setSecondRoundSeats(rs.getInt("second_round_seats"));
-                    party.setBonusSeat(rs.getInt("bonus_seat"));
-                    party.setTotalSeats(rs.getInt("total_seats"));
-                    parties.add(party);
-                }
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // Tickets tracked by this node are answered without blocking, so they stay on the container thread
+        if (request.getServletPath().endsWith("/ticket")) {
+            String id = request.getParameter("id");
+            TallyQueue.Ticket ticket = id == null ? null : TallyQueue.getInstance().getTicket(id.trim());
+            if (ticket != null || id == null) {
+                writeTicket(request, response, id, ticket);
+            } else {
+                AsyncDispatch.run(request, response, this::processGetTicket);
             }
-        } catch (Exception e) {
-            throw new IOException("Database error: " + e.getMessage());
+            return;
         }
-        return parties;
+        AsyncDispatch.run(request, response, this::processGet);
     }
 
-    private void updatePartyVotes(Map<String, String[]> parameterMap, District district) throws IllegalArgumentException {
-        for (Map.Entry<String, String[]> entry : parameterMap.entrySet()) {
-            String partyName = entry.getKey().trim();
-            String[] votesStr = entry.getValue();
-            if (partyName.equals("districtId") || partyName.equals("totalVotes") || votesStr == null || votesStr.length == 0) {
-                continue;
+    // Reads may be served by a replica, but never older than a version the client wrote or asked for
+    private void processGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            int districtId = parseIntOrThrow(request.getParameter("districtId"), "District ID");
+            int minVersion = ReadYourWrites.minVersion(request, districtId);
+            boolean binary = HttpCaching.acceptsBinary(request, response);
+            DistrictCache cache = DistrictCache.getInstance();
+            long t = System.nanoTime();
+            District district = cache.getIfPresent(districtId);
+            if (district != null && district.getVersion() < minVersion) {
+                // Written through another node since this one cached it
+                cache.invalidate(districtId, minVersion);
+                district = null;
             }
-
-            int votes = parseIntOrThrow(votesStr[0], "Votes for " + partyName);
-            Party party = findPartyByName(district.getParties(), partyName);
-            if (party != null) {
-                party.setVotes(votes);
+            // The materialized snapshot is one primary-key read and is written out as stored; it only holds JSON
+            if (district == null && !binary) {
+                ResultSnapshots.Snapshot snapshot = fetchSnapshot(districtId, minVersion);
+                if (snapshot != null) {
+                    t = GET_PHASES.db(t);
+                    if (HttpCaching.notModified(request, response, HttpCaching.etag(districtId, snapshot.getVersion()),
+                            snapshot.getUpdatedAt())) {
+                        return;
+                    }
+                    HttpCaching.writeJson(request, response, snapshot.getJson());
+                    GET_PHASES.serialize(t);
+                    return;
+                }
+            }
+            if (district == null) {
+                district = cache.get(districtId, id -> readDistrict(id, minVersion));
+            }
+            t = GET_PHASES.db(t);
+            if (district == null) {
+                handleError(response, "District with ID " + districtId + " not found");
+                return;
+            }
+            if (HttpCaching.notModified(request, response, HttpCaching.variant(HttpCaching.etag(district), binary),
+                    cache.lastModified(districtId))) {
+                return;
+            }
+            if (binary) {
+                try (BinaryResults body = BinaryResults.begin()) {
+                    HttpCaching.writeBinary(request, response, body.district(district).end());
+                }
             } else {
-                throw new IllegalArgumentException("Party " + partyName + " not found in district");
+                HttpCaching.writeJson(request, response, gson.toJson(district));
             }
+            GET_PHASES.serialize(t);
+        } catch (Exception e) {
+            handleError(response, "Failed to fetch district: " + e.getMessage());
         }
     }
 
-    private void calculateResults(District district) {
-        int totalVotes = district.getTotalVotes();
-        district.setValidVotes(0);
-        district.setDisqualifiedVotes(totalVotes);
-        district.setVoteThreshold((int) (totalVotes * 0.0625)); // 6.25% threshold to disqualify 500 votes
-
-        if (totalVotes <= 0) {
-            district.getParties().forEach(p -> {
-                p.setQualified(false);
-                p.setFirstRoundSeats(0);
-                p.setSecondRoundSeats(0);
-                p.setBonusSeat(0);
-                p.setTotalSeats(0);
-            });
-            return;
+    // Submitted through another node, or forgotten here: finished tickets are stored in the database. A ticket
+    // still queued on the node that accepted it is not found until it finishes.
+    private void processGetTicket(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String id = request.getParameter("id").trim();
+        try {
+            writeTicket(request, response, id, TallyQueue.getInstance().loadTicket(id));
+        } catch (SQLException e) {
+            handleError(response, "Failed to fetch ticket: " + e.getMessage());
         }
+    }
 
-        // Use strict > comparison for qualification
-        List<Party> qualifiedParties = district.getParties().stream()
-                .filter(p -> p.getVotes() > district.getVoteThreshold())
-                .collect(Collectors.toList());
-
-        if (qualifiedParties.isEmpty()) {
-            district.getParties().forEach(p -> {
-                p.setQualified(false);
-                p.setFirstRoundSeats(0);
-                p.setSecondRoundSeats(0);
-                p.setBonusSeat(0);
-                p.setTotalSeats(0);
-            });
+    private void writeTicket(HttpServletRequest request, HttpServletResponse response, String id, TallyQueue.Ticket ticket)
+            throws IOException {
+        if (ticket == null) {
+            handleError(response, HttpServletResponse.SC_NOT_FOUND, "Ticket " + id + " not found");
             return;
         }
+        if (ticket.getStatus() == TallyQueue.Status.COMMITTED) {
+            ReadYourWrites.remember(request, response, ticket.getDistrictId(), ticket.getVersion());
+        }
+        response.setContentType("application/json");
+        response.getWriter().write(gson.toJson(ticket));
+    }
 
-        int totalValidVotes = qualifiedParties.stream().mapToInt(Party::getVotes).sum();
-        district.setValidVotes(totalValidVotes);
-        district.setDisqualifiedVotes(totalVotes - totalValidVotes);
-
-        int totalSeats = district.getSeats();
-        int seatsForProportional = totalSeats - 1; // Reserve 1 seat for bonus
-        int[] seatAllocation = new int[qualifiedParties.size()];
-
-        // Proportional allocation for remaining seats
-        for (int i = 0; i < qualifiedParties.size(); i++) {
-            Party party = qualifiedParties.get(i);
-            seatAllocation[i] = (int) Math.round((double) party.getVotes() / totalValidVotes * seatsForProportional);
-            party.setFirstRoundSeats(seatAllocation[i]);
-            party.setTotalSeats(seatAllocation[i]);
-            party.setQualified(true);
+    private District fetchDistrictById(int id) throws IOException {
+        try (Connection conn = DatabaseUtil.getConnection()) {
+            return fetchDistrictById(id, conn);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Database error: " + e.getMessage());
         }
+    }
 
-        int allocatedSeats = Arrays.stream(seatAllocation).sum();
-        int remainingSeats = seatsForProportional - allocatedSeats;
+    private District readDistrict(int id, int minVersion) throws IOException {
+        try {
+            return ReplicaRouter.read(id, minVersion, conn -> DistrictRepository.fetchDistrictById(conn, id), District::getVersion);
+        } catch (Exception e) {
+            throw new IOException("Database error: " + e.getMessage());
+        }
+    }
 
-        if (remainingSeats > 0) {
-            Party maxParty = qualifiedParties.stream()
-                    .max(Comparator.comparingInt(Party::getVotes))
-                    .orElse(qualifiedParties.get(0));
-            maxParty.setFirstRoundSeats(maxParty.getFirstRoundSeats() + remainingSeats);
-            maxParty.setTotalSeats(maxParty.getTotalSeats() + remainingSeats);
+    private ResultSnapshots.Snapshot fetchSnapshot(int districtId, int minVersion) throws IOException {
+        try {
+            return ReplicaRouter.read(districtId, minVersion, conn -> ResultSnapshots.fetch(conn, districtId),
+                    ResultSnapshots.Snapshot::getVersion);
+        } catch (Exception e) {
+            throw new IOException("Database error: " + e.getMessage());
         }
+    }
 
-        // Award bonus seat to the party with the most votes
-        Party bonusParty = qualifiedParties.stream()
-                .max(Comparator.comparingInt(Party::getVotes))
-                .orElse(qualifiedParties.get(0));
-        bonusParty.setBonusSeat(1);
-        bonusParty.setTotalSeats(bonusParty.getTotalSeats() + 1);
-
-        // Adjust to ensure total seats = 10
-        int totalAllocatedSeats = qualifiedParties.stream().mapToInt(Party::getTotalSeats).sum();
-        if (totalAllocatedSeats > totalSeats) {
-            // Reduce seats from the party with the least votes (but not the bonus party)
-            Party minParty = qualifiedParties.stream()
-                    .filter(p -> p != bonusParty)
-                    .min(Comparator.comparingInt(Party::getVotes))
-                    .orElse(qualifiedParties.get(qualifiedParties.size() - 1));
-            int excessSeats = totalAllocatedSeats - totalSeats;
-            minParty.setFirstRoundSeats(minParty.getFirstRoundSeats() - excessSeats);
-            minParty.setTotalSeats(minParty.getTotalSeats() - excessSeats);
+    private District fetchDistrictById(int id, Connection conn) throws IOException {
+        try {
+            return DistrictRepository.fetchDistrictById(conn, id);
+        } catch (Exception e) {
+            throw new IOException("Database error: " + e.getMessage());
         }
+    }
 
-        district.getParties().stream()
-                .filter(p -> !qualifiedParties.contains(p))
-                .forEach(p -> {
-                    p.setQualified(false);
-                    p.setFirstRoundSeats(0);
-                    p.setSecondRoundSeats(0);
-                    p.setBonusSeat(0);
-                    p.setTotalSeats(0);
-                });
+    private boolean recordBatch(String batchId, int districtId, String stationId, int totalVotes, Connection conn) throws Exception {
+        String sql = "INSERT INTO vote_batches (batch_id, district_id, station_id, total_votes) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, batchId);
+            stmt.setInt(2, districtId);
+            stmt.setString(3, stationId);
+            stmt.setInt(4, totalVotes);
+            stmt.executeUpdate();
+            return true;
+        } catch (SQLIntegrityConstraintViolationException e) {
+            return false;
+        }
     }
 
-    private void updateDistrictInDatabase(District district) throws IOException {
-        try (Connection conn = DatabaseUtil.getConnection()) {
-            String districtSql = "UPDATE districts SET total_votes = ?, valid_votes = ?, disqualified_votes = ?, vote_threshold = ? WHERE id = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(districtSql)) {
-                stmt.setInt(1, district.getTotalVotes());
-                stmt.setInt(2, district.getValidVotes());
-                stmt.setInt(3, district.getDisqualifiedVotes());
-                stmt.setInt(4, district.getVoteThreshold());
-                stmt.setInt(5, district.getId());
-                stmt.executeUpdate();
+    // The district row is updated first so that it serializes concurrent batches for the same district.
+    // Returns the district's new version.
+    private int applyIncrements(int districtId, int totalVotes, Map<Integer, Integer> increments, Connection conn) throws Exception {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE districts SET total_votes = total_votes + ?, version = version + 1 WHERE id = ?")) {
+            stmt.setInt(1, totalVotes);
+            stmt.setInt(2, districtId);
+            stmt.executeUpdate();
+        }
+        int version = DistrictRepository.fetchVersions(conn, Collections.singleton(districtId)).get(districtId);
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE parties SET votes = votes + ? WHERE district_id = ? AND id = ?")) {
+            for (Map.Entry<Integer, Integer> increment : increments.entrySet()) {
+                stmt.setInt(1, increment.getValue());
+                stmt.setInt(2, districtId);
+                stmt.setInt(3, increment.getKey());
+                stmt.addBatch();
             }
+            stmt.executeBatch();
+        }
+        // Votes moved without a reallocation, so reads go to the district tables until the next recompute
+        ResultSnapshots.markStale(conn, Collections.singleton(districtId));
+        return version;
+    }
 
-            String partySql = "UPDATE parties SET votes = ?, qualified = ?, first_round_seats = ?, second_round_seats = ?, bonus_seat = ?, total_seats = ? WHERE district_id = ? AND id = ?";
-            try (PreparedStatement stmt = conn.prepareStatement(partySql)) {
-                for (Party party : district.getParties()) {
-                    stmt.setInt(1, party.getVotes());
-                    stmt.setBoolean(2, party.isQualified());
-                    stmt.setInt(3, party.getFirstRoundSeats());
-                    stmt.setInt(4, party.getSecondRoundSeats());
-                    stmt.setInt(5, party.getBonusSeat());
-                    stmt.setInt(6, party.getTotalSeats());
-                    stmt.setInt(7, district.getId());
-                    stmt.setInt(8, party.getId());
-                    stmt.executeUpdate();
-                }
+    private boolean recomputeDue(int districtId) {
+        Long last = lastRecompute.get(districtId);
+        return last == null || System.currentTimeMillis() - last >= recomputeIntervalMillis;
+    }
+
+    private District lockDistrict(int id, Connection conn) throws IOException {
+        try {
+            return DistrictRepository.fetchDistrictForUpdate(conn, id);
+        } catch (SQLException e) {
+            if (DatabaseUtil.isRolledBack(e)) {
+                throw new DistrictBusyException(id, e);
             }
+            throw new IOException("Database error: " + e.getMessage());
         } catch (Exception e) {
             throw new IOException("Database error: " + e.getMessage());
         }
     }
 
-    private Party findPartyByName(List<Party> parties, String partyName) {
-        return parties.stream()
-                .filter(p -> p.getName().equals(partyName))
-                .findFirst()
-                .orElse(null);
+    private void writeDistrict(District district, Connection conn) throws IOException {
+        try {
+            DistrictRepository.writeDistrict(conn, district);
+        } catch (StaleDistrictException e) {
+            throw e;
+        } catch (SQLException e) {
+            if (DatabaseUtil.isRolledBack(e)) {
+                throw new DistrictBusyException(district.getId(), e);
+            }
+            throw new IOException("Database error: " + e.getMessage());
+        } catch (Exception e) {
+            throw new IOException("Database error: " + e.getMessage());
+        }
     }
 
     private int parseIntOrThrow(String value, String fieldName) throws IllegalArgumentException {
+        return VoteParameters.parseIntOrThrow(value, fieldName);
+    }
+
+    private String requireParameter(HttpServletRequest request, String name, String fieldName) throws IllegalArgumentException {
+        String value = request.getParameter(name);
         if (value == null || value.trim().isEmpty()) {
             throw new IllegalArgumentException(fieldName + " is required");
         }
-        try {
-            return Integer.parseInt(value);
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException(fieldName + " must be a valid integer");
-        }
+        return value.trim();
     }
 
     private void handleError(HttpServletResponse response, String message) throws IOException {
-        response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        handleError(response, HttpServletResponse.SC_BAD_REQUEST, message);
+    }
+
+    private void handleError(HttpServletResponse response, int status, String message) throws IOException {
+        response.setStatus(status);
         response.getWriter().write("Error: " + message);
     }
 }
\ No newline at end of file
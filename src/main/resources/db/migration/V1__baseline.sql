@@ -0,0 +1,22 @@
+-- Tables as the application originally expected them; existing installations already have these
+CREATE TABLE IF NOT EXISTS districts (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    seats INT NOT NULL,
+    total_votes INT NOT NULL DEFAULT 0,
+    valid_votes INT NOT NULL DEFAULT 0,
+    disqualified_votes INT NOT NULL DEFAULT 0,
+    vote_threshold INT NOT NULL DEFAULT 0
+);
+
+CREATE TABLE IF NOT EXISTS parties (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    district_id INT NOT NULL,
+    name VARCHAR(255) NOT NULL,
+    votes INT NOT NULL DEFAULT 0,
+    qualified BOOLEAN NOT NULL DEFAULT FALSE,
+    first_round_seats INT NOT NULL DEFAULT 0,
+    second_round_seats INT NOT NULL DEFAULT 0,
+    bonus_seat INT NOT NULL DEFAULT 0,
+    total_seats INT NOT NULL DEFAULT 0
+);
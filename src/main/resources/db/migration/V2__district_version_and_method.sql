@@ -0,0 +1,4 @@
+-- Optimistic locking: every result write checks and advances the version
+ALTER TABLE districts ADD COLUMN version INT NOT NULL DEFAULT 0;
+
+ALTER TABLE districts ADD COLUMN allocation_method VARCHAR(32) NOT NULL DEFAULT 'BONUS_SEAT';
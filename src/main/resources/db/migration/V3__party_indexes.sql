@@ -0,0 +1,2 @@
+-- Serves "WHERE district_id = ?" reads in id order and "WHERE district_id = ? AND id = ?" updates
+CREATE INDEX idx_parties_district ON parties (district_id, id);
@@ -0,0 +1,8 @@
+-- Polling-station batches; the primary key makes a resubmitted batch a no-op
+CREATE TABLE IF NOT EXISTS vote_batches (
+    batch_id VARCHAR(64) NOT NULL PRIMARY KEY,
+    district_id INT NOT NULL,
+    station_id VARCHAR(64) NOT NULL,
+    total_votes INT NOT NULL,
+    received_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
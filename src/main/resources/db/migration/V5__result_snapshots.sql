@@ -0,0 +1,19 @@
+-- Materialized results, one row per district, read by primary key
+CREATE TABLE IF NOT EXISTS district_results (
+    district_id INT NOT NULL PRIMARY KEY,
+    version INT NOT NULL,
+    json MEDIUMBLOB,
+    ranking TEXT NOT NULL,
+    updated_at BIGINT NOT NULL
+);
+
+-- National standings, split into shards so concurrent tallies do not contend on one row per party
+CREATE TABLE IF NOT EXISTS party_leaderboard (
+    party_name VARCHAR(255) NOT NULL,
+    shard INT NOT NULL,
+    votes BIGINT NOT NULL DEFAULT 0,
+    seats INT NOT NULL DEFAULT 0,
+    bonus_seats INT NOT NULL DEFAULT 0,
+    districts INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (party_name, shard)
+);
@@ -0,0 +1,13 @@
+-- Lets every node find the results changed since it last looked
+CREATE INDEX idx_district_results_updated ON district_results (updated_at);
+
+-- Outcome of write-behind tallies, so a ticket can be polled on any node
+CREATE TABLE IF NOT EXISTS tally_tickets (
+    ticket VARCHAR(64) NOT NULL PRIMARY KEY,
+    district_id INT NOT NULL,
+    status VARCHAR(16) NOT NULL,
+    version INT,
+    error VARCHAR(1024),
+    finished_at BIGINT NOT NULL
+);
+CREATE INDEX idx_tally_tickets_finished ON tally_tickets (finished_at);
@@ -0,0 +1,183 @@
+package allocation;
+
+import junit.framework.TestCase;
+import model.District;
+import model.Party;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class BonusSeatAllocatorTest extends TestCase {
+
+    public void testTiedLeadersGiveTheBonusToTheEarlierParty() {
+        District district = district(10, 1000, 400, 400, 200);
+
+        AllocationEngine.calculateResults(district);
+
+        assertSeats(district, 5, 4, 1);
+        assertEquals(1, district.getParties().get(0).getBonusSeat());
+        assertEquals(0, district.getParties().get(1).getBonusSeat());
+    }
+
+    public void testExcessIsTakenFromTheEarlierOfTiedWeakestParties() {
+        // Every share rounds up: 4 x 2.5 -> 3, so two seats too many
+        District district = district(11, 1000, 250, 250, 250, 250);
+
+        AllocationEngine.calculateResults(district);
+
+        assertSeats(district, 4, 1, 3, 3);
+    }
+
+    public void testMatchesTheOriginalRule() {
+        Random random = new Random(20240601L);
+        for (int run = 0; run < 20000; run++) {
+            int partyCount = 1 + random.nextInt(8);
+            int seats = 1 + random.nextInt(15);
+            // Small vote counts make ties at the top, the bottom and the threshold common
+            int bound = run % 2 == 0 ? 12 : 5000;
+            int[] votes = new int[partyCount];
+            int totalVotes = random.nextInt(bound);
+            for (int i = 0; i < partyCount; i++) {
+                votes[i] = random.nextInt(bound);
+                totalVotes += votes[i];
+            }
+
+            District actual = district(seats, totalVotes, votes);
+            District expected = district(seats, totalVotes, votes);
+            AllocationEngine.calculateResults(actual);
+            originalCalculateResults(expected);
+
+            String label = "seats " + seats + ", total " + totalVotes + ", votes " + Arrays.toString(votes);
+            assertEquals(label, expected.getValidVotes(), actual.getValidVotes());
+            assertEquals(label, expected.getDisqualifiedVotes(), actual.getDisqualifiedVotes());
+            assertEquals(label, expected.getVoteThreshold(), actual.getVoteThreshold());
+            for (int i = 0; i < partyCount; i++) {
+                Party want = expected.getParties().get(i);
+                Party got = actual.getParties().get(i);
+                String party = label + ", party " + i;
+                assertEquals(party, want.isQualified(), got.isQualified());
+                assertEquals(party, want.getFirstRoundSeats(), got.getFirstRoundSeats());
+                assertEquals(party, want.getSecondRoundSeats(), got.getSecondRoundSeats());
+                assertEquals(party, want.getBonusSeat(), got.getBonusSeat());
+                assertEquals(party, want.getTotalSeats(), got.getTotalSeats());
+            }
+        }
+    }
+
+    private static void assertSeats(District district, int... totalSeats) {
+        for (int i = 0; i < totalSeats.length; i++) {
+            assertEquals("party " + i, totalSeats[i], district.getParties().get(i).getTotalSeats());
+        }
+    }
+
+    private static District district(int seats, int totalVotes, int... votes) {
+        District district = new District();
+        district.setSeats(seats);
+        district.setTotalVotes(totalVotes);
+        district.setAllocationMethod(AllocationMethod.BONUS_SEAT.name());
+        for (int i = 0; i < votes.length; i++) {
+            Party party = new Party();
+            party.setId(i + 1);
+            party.setName("P" + (i + 1));
+            party.setVotes(votes[i]);
+            district.addParty(party);
+        }
+        return district;
+    }
+
+    // VoteServlet.calculateResults as it was before allocation moved into this package, kept verbatim
+    private static void originalCalculateResults(District district) {
+        int totalVotes = district.getTotalVotes();
+        district.setValidVotes(0);
+        district.setDisqualifiedVotes(totalVotes);
+        district.setVoteThreshold((int) (totalVotes * 0.0625)); // 6.25% threshold to disqualify 500 votes
+
+        if (totalVotes <= 0) {
+            district.getParties().forEach(p -> {
+                p.setQualified(false);
+                p.setFirstRoundSeats(0);
+                p.setSecondRoundSeats(0);
+                p.setBonusSeat(0);
+                p.setTotalSeats(0);
+            });
+            return;
+        }
+
+        // Use strict > comparison for qualification
+        List<Party> qualifiedParties = district.getParties().stream()
+                .filter(p -> p.getVotes() > district.getVoteThreshold())
+                .collect(Collectors.toList());
+
+        if (qualifiedParties.isEmpty()) {
+            district.getParties().forEach(p -> {
+                p.setQualified(false);
+                p.setFirstRoundSeats(0);
+                p.setSecondRoundSeats(0);
+                p.setBonusSeat(0);
+                p.setTotalSeats(0);
+            });
+            return;
+        }
+
+        int totalValidVotes = qualifiedParties.stream().mapToInt(Party::getVotes).sum();
+        district.setValidVotes(totalValidVotes);
+        district.setDisqualifiedVotes(totalVotes - totalValidVotes);
+
+        int totalSeats = district.getSeats();
+        int seatsForProportional = totalSeats - 1; // Reserve 1 seat for bonus
+        int[] seatAllocation = new int[qualifiedParties.size()];
+
+        // Proportional allocation for remaining seats
+        for (int i = 0; i < qualifiedParties.size(); i++) {
+            Party party = qualifiedParties.get(i);
+            seatAllocation[i] = (int) Math.round((double) party.getVotes() / totalValidVotes * seatsForProportional);
+            party.setFirstRoundSeats(seatAllocation[i]);
+            party.setTotalSeats(seatAllocation[i]);
+            party.setQualified(true);
+        }
+
+        int allocatedSeats = Arrays.stream(seatAllocation).sum();
+        int remainingSeats = seatsForProportional - allocatedSeats;
+
+        if (remainingSeats > 0) {
+            Party maxParty = qualifiedParties.stream()
+                    .max(Comparator.comparingInt(Party::getVotes))
+                    .orElse(qualifiedParties.get(0));
+            maxParty.setFirstRoundSeats(maxParty.getFirstRoundSeats() + remainingSeats);
+            maxParty.setTotalSeats(maxParty.getTotalSeats() + remainingSeats);
+        }
+
+        // Award bonus seat to the party with the most votes
+        Party bonusParty = qualifiedParties.stream()
+                .max(Comparator.comparingInt(Party::getVotes))
+                .orElse(qualifiedParties.get(0));
+        bonusParty.setBonusSeat(1);
+        bonusParty.setTotalSeats(bonusParty.getTotalSeats() + 1);
+
+        // Adjust to ensure total seats = 10
+        int totalAllocatedSeats = qualifiedParties.stream().mapToInt(Party::getTotalSeats).sum();
+        if (totalAllocatedSeats > totalSeats) {
+            // Reduce seats from the party with the least votes (but not the bonus party)
+            Party minParty = qualifiedParties.stream()
+                    .filter(p -> p != bonusParty)
+                    .min(Comparator.comparingInt(Party::getVotes))
+                    .orElse(qualifiedParties.get(qualifiedParties.size() - 1));
+            int excessSeats = totalAllocatedSeats - totalSeats;
+            minParty.setFirstRoundSeats(minParty.getFirstRoundSeats() - excessSeats);
+            minParty.setTotalSeats(minParty.getTotalSeats() - excessSeats);
+        }
+
+        district.getParties().stream()
+                .filter(p -> !qualifiedParties.contains(p))
+                .forEach(p -> {
+                    p.setQualified(false);
+                    p.setFirstRoundSeats(0);
+                    p.setSecondRoundSeats(0);
+                    p.setBonusSeat(0);
+                    p.setTotalSeats(0);
+                });
+    }
+}
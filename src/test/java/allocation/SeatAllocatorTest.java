@@ -0,0 +1,70 @@
+package allocation;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class SeatAllocatorTest extends TestCase {
+
+    // 53,000 / 24,000 / 23,000 votes for 7 seats: the usual example of D'Hondt favouring the largest party
+    private static final int[] THREE_PARTIES = {53000, 24000, 23000};
+
+    // 100,000 votes for 10 seats, quota 10,000
+    private static final int[] SIX_PARTIES = {47000, 16000, 15800, 12000, 6100, 3100};
+
+    public void testDHondt() {
+        assertSeats(new DHondtAllocator(), THREE_PARTIES, 7, 4, 2, 1);
+        assertSeats(new DHondtAllocator(), new int[] {100000, 80000, 30000, 20000}, 8, 4, 3, 1, 0);
+        assertSeats(new DHondtAllocator(), SIX_PARTIES, 10, 5, 2, 2, 1, 0, 0);
+    }
+
+    public void testSainteLague() {
+        assertSeats(new SainteLagueAllocator(), THREE_PARTIES, 7, 3, 2, 2);
+        assertSeats(new SainteLagueAllocator(), SIX_PARTIES, 10, 4, 2, 2, 1, 1, 0);
+    }
+
+    public void testHare() {
+        assertSeats(new HareAllocator(), SIX_PARTIES, 10, 5, 2, 1, 1, 1, 0);
+        assertSeats(new HareAllocator(), THREE_PARTIES, 7, 4, 2, 1);
+    }
+
+    public void testPartiesWithoutVotesGetNoSeats() {
+        for (AllocationMethod method : AllocationMethod.values()) {
+            int[] seats = new int[4];
+            int[] bonus = new int[4];
+            method.getAllocator().allocate(new int[] {0, 500, 0, 300}, 4, 5, seats, bonus);
+
+            assertEquals(method.name(), 0, seats[0] + bonus[0]);
+            assertEquals(method.name(), 0, seats[2] + bonus[2]);
+            assertEquals(method.name(), 5, sum(seats) + sum(bonus));
+        }
+    }
+
+    public void testBuffersLongerThanThePartyCountAreLeftAlone() {
+        int[] seats = {9, 9, 9, 9};
+        int[] bonus = {9, 9, 9, 9};
+
+        new DHondtAllocator().allocate(new int[] {300, 100, 7, 7}, 2, 4, seats, bonus);
+
+        assertEquals("[3, 1, 9, 9]", Arrays.toString(seats));
+        assertEquals("[0, 0, 9, 9]", Arrays.toString(bonus));
+    }
+
+    private static void assertSeats(SeatAllocator allocator, int[] votes, int totalSeats, int... expected) {
+        int[] seats = new int[votes.length];
+        int[] bonus = new int[votes.length];
+
+        allocator.allocate(votes, votes.length, totalSeats, seats, bonus);
+
+        assertEquals(Arrays.toString(expected), Arrays.toString(seats));
+        assertEquals(0, sum(bonus));
+    }
+
+    private static int sum(int[] values) {
+        int sum = 0;
+        for (int value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,202 @@
+package audit;
+
+import junit.framework.TestCase;
+import model.Party;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class AuditLogTest extends TestCase {
+    private Path directory;
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("audit-log-test");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    public void testRecordsRoundTrip() throws IOException {
+        AuditLog log = open(1 << 16);
+        Map<Integer, Integer> increments = new LinkedHashMap<>();
+        increments.put(3, 7);
+        increments.put(4, 0);
+        log.append(AuditRecord.tally(AuditRecord.Kind.TALLY, 1, 5, 100, parties(40, 60), null));
+        log.append(AuditRecord.batch(1, 6, 7, increments, "batch-1", "station \u00e9\ud83d\uddf3"));
+        log.append(AuditRecord.tally(AuditRecord.Kind.ASYNC_TALLY, 2, 1, 0, parties(), "ticket-1"));
+        log.close();
+
+        List<AuditRecord> records = read(Long.MAX_VALUE);
+        assertEquals(3, records.size());
+
+        AuditRecord tally = records.get(0);
+        assertEquals(1, tally.getSequence());
+        assertEquals(AuditRecord.Kind.TALLY, tally.getKind());
+        assertEquals(1, tally.getDistrictId());
+        assertEquals(5, tally.getVersion());
+        assertEquals(100, tally.getTotalVotes());
+        assertEquals(2, tally.getPartyCount());
+        assertEquals(1, tally.getPartyId(0));
+        assertEquals(40, tally.getVotes(0));
+        assertEquals(2, tally.getPartyId(1));
+        assertEquals(60, tally.getVotes(1));
+        assertNull(tally.getReference());
+        assertNull(tally.getStationId());
+
+        AuditRecord batch = records.get(1);
+        assertEquals(2, batch.getSequence());
+        assertEquals(AuditRecord.Kind.BATCH, batch.getKind());
+        assertEquals(6, batch.getVersion());
+        assertEquals(7, batch.getTotalVotes());
+        assertEquals(3, batch.getPartyId(0));
+        assertEquals(7, batch.getVotes(0));
+        assertEquals(4, batch.getPartyId(1));
+        assertEquals(0, batch.getVotes(1));
+        assertEquals("batch-1", batch.getReference());
+        assertEquals("station \u00e9\ud83d\uddf3", batch.getStationId());
+
+        AuditRecord async = records.get(2);
+        assertEquals(3, async.getSequence());
+        assertEquals(AuditRecord.Kind.ASYNC_TALLY, async.getKind());
+        assertEquals(0, async.getPartyCount());
+        assertEquals("ticket-1", async.getReference());
+
+        assertTrue(tally.getTimestamp() <= batch.getTimestamp() && batch.getTimestamp() <= async.getTimestamp());
+    }
+
+    public void testReadStopsAfterUntil() throws IOException {
+        AuditLog log = open(1 << 16);
+        log.append(tally(1));
+        log.close();
+        long timestamp = read(Long.MAX_VALUE).get(0).getTimestamp();
+
+        assertEquals(0, read(timestamp - 1).size());
+        assertEquals(1, read(timestamp).size());
+    }
+
+    public void testSegmentsRotateAndReadInOrder() throws IOException {
+        int frame = AuditLog.FRAME_HEADER_BYTES + tally(1).encodedSize();
+        // Room for three frames per segment
+        AuditLog log = open(AuditLog.HEADER_BYTES + 3 * frame + 4);
+        for (int i = 1; i <= 10; i++) {
+            log.append(tally(i));
+        }
+        log.close();
+
+        List<Path> segments = AuditLog.segments(directory);
+        assertEquals(4, segments.size());
+        assertEquals("audit-00000000000000000004.log", segments.get(1).getFileName().toString());
+        List<AuditRecord> records = read(Long.MAX_VALUE);
+        assertEquals(10, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i + 1, records.get(i).getSequence());
+            assertEquals(i + 1, records.get(i).getVersion());
+        }
+    }
+
+    public void testTornFrameAtTheEndIsDroppedAndOverwritten() throws IOException {
+        AuditLog log = open(1 << 16);
+        for (int i = 1; i <= 3; i++) {
+            log.append(tally(i));
+        }
+        log.close();
+        Path segment = AuditLog.segments(directory).get(0);
+        int frame = AuditLog.FRAME_HEADER_BYTES + tally(1).encodedSize();
+        // Damage the payload of the third frame, as a write cut short by a crash would
+        corrupt(segment, AuditLog.HEADER_BYTES + 2 * frame + AuditLog.FRAME_HEADER_BYTES + 20);
+
+        assertEquals(2, read(Long.MAX_VALUE).size());
+
+        AuditLog reopened = open(1 << 16);
+        reopened.append(tally(4));
+        reopened.close();
+        List<AuditRecord> records = read(Long.MAX_VALUE);
+        assertEquals(3, records.size());
+        assertEquals(3, records.get(2).getSequence());
+        assertEquals(4, records.get(2).getVersion());
+    }
+
+    public void testDamageBeforeTheNewestSegmentFailsTheRead() throws IOException {
+        int frame = AuditLog.FRAME_HEADER_BYTES + tally(1).encodedSize();
+        AuditLog log = open(AuditLog.HEADER_BYTES + 2 * frame + 4);
+        for (int i = 1; i <= 5; i++) {
+            log.append(tally(i));
+        }
+        log.close();
+        corrupt(AuditLog.segments(directory).get(0), AuditLog.HEADER_BYTES + AuditLog.FRAME_HEADER_BYTES + 20);
+
+        try {
+            read(Long.MAX_VALUE);
+            fail("Expected a damaged segment to fail the read");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupt record in audit-00000000000000000001.log"));
+        }
+    }
+
+    public void testOverlongStringIsRefusedWithoutDamagingTheLog() throws IOException {
+        AuditLog log = open(1 << 20);
+        char[] reference = new char[AuditRecord.MAX_STRING_BYTES + 1];
+        Arrays.fill(reference, 'x');
+        log.append(AuditRecord.batch(1, 1, 1, Collections.singletonMap(1, 1), new String(reference), "s"));
+        log.append(tally(2));
+        log.close();
+
+        List<AuditRecord> records = read(Long.MAX_VALUE);
+        assertEquals(1, records.size());
+        assertEquals(1, records.get(0).getSequence());
+        assertEquals(2, records.get(0).getVersion());
+    }
+
+    private AuditLog open(int segmentBytes) throws IOException {
+        AuditLog log = new AuditLog(directory, segmentBytes, false, true);
+        log.open();
+        return log;
+    }
+
+    private List<AuditRecord> read(long until) throws IOException {
+        List<AuditRecord> records = new ArrayList<>();
+        AuditReader.read(directory, until, records::add);
+        return records;
+    }
+
+    private static void corrupt(Path segment, int offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, offset);
+            one.put(0, (byte) ~one.get(0)).rewind();
+            channel.write(one, offset);
+        }
+    }
+
+    static AuditRecord tally(int version) {
+        return AuditRecord.tally(AuditRecord.Kind.TALLY, 1, version, 100, parties(40, 60), null);
+    }
+
+    static List<Party> parties(int... votes) {
+        List<Party> parties = new ArrayList<>();
+        for (int i = 0; i < votes.length; i++) {
+            Party party = new Party();
+            party.setId(i + 1);
+            party.setVotes(votes[i]);
+            parties.add(party);
+        }
+        return parties;
+    }
+}
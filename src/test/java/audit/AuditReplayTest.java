@@ -0,0 +1,102 @@
+package audit;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AuditReplayTest extends TestCase {
+
+    public void testLatestTallySetsTheCountsAndLaterBatchesAddToThem() {
+        AuditReplay.State state = replay(
+                tally(AuditRecord.Kind.TALLY, 3, 100, 40, 60),
+                batch(2, 10, 5, 5),
+                tally(AuditRecord.Kind.TALLY, 4, 120, 50, 70),
+                batch(5, 10, 4, 6),
+                batch(6, 3, 0, 3));
+
+        assertTrue(state.tallied);
+        assertEquals(6, state.version);
+        assertEquals(133, state.totalVotes);
+        assertEquals(Integer.valueOf(54), state.votes.get(1));
+        assertEquals(Integer.valueOf(79), state.votes.get(2));
+    }
+
+    public void testNodeLogsMergeInAnyOrder() {
+        // Two nodes took writes for the same district; each log is in its own sequence order
+        List<AuditRecord> nodeA = Arrays.asList(
+                tally(AuditRecord.Kind.TALLY, 1, 10, 5, 5),
+                batch(3, 4, 4, 0),
+                tally(AuditRecord.Kind.TALLY, 6, 50, 20, 30));
+        List<AuditRecord> nodeB = Arrays.asList(
+                batch(2, 2, 1, 1),
+                tally(AuditRecord.Kind.ASYNC_TALLY, 4, 30, 10, 20),
+                batch(7, 6, 1, 5),
+                batch(5, 8, 8, 0));
+
+        AuditReplay.State ab = replay(concat(nodeA, nodeB));
+        AuditReplay.State ba = replay(concat(nodeB, nodeA));
+
+        for (AuditReplay.State state : Arrays.asList(ab, ba)) {
+            assertEquals(7, state.version);
+            assertEquals(56, state.totalVotes);
+            assertEquals(Integer.valueOf(21), state.votes.get(1));
+            assertEquals(Integer.valueOf(35), state.votes.get(2));
+        }
+    }
+
+    public void testCoalescedTalliesAtOneVersionEndWithTheLastLogged() {
+        AuditReplay.State state = replay(
+                tally(AuditRecord.Kind.ASYNC_TALLY, 2, 10, 4, 0),
+                tally(AuditRecord.Kind.ASYNC_TALLY, 2, 20, 4, 9),
+                tally(AuditRecord.Kind.ASYNC_TALLY, 2, 30, 5, 9));
+
+        assertEquals(2, state.version);
+        assertEquals(30, state.totalVotes);
+        assertEquals(Integer.valueOf(5), state.votes.get(1));
+        assertEquals(Integer.valueOf(9), state.votes.get(2));
+    }
+
+    public void testBatchesWithoutATallyAreNotTallied() {
+        AuditReplay.State state = replay(batch(3, 10, 6, 4), batch(4, 2, 1, 1));
+
+        assertFalse(state.tallied);
+        assertEquals(4, state.version);
+        assertEquals(12, state.totalVotes);
+        assertEquals(Integer.valueOf(7), state.votes.get(1));
+    }
+
+    private static AuditReplay.State replay(AuditRecord... records) {
+        return replay(Arrays.asList(records));
+    }
+
+    private static AuditReplay.State replay(List<AuditRecord> records) {
+        AuditReplay.State state = new AuditReplay.State();
+        for (AuditRecord record : records) {
+            state.apply(record);
+        }
+        return state.finish();
+    }
+
+    private static List<AuditRecord> concat(List<AuditRecord> first, List<AuditRecord> second) {
+        List<AuditRecord> records = new ArrayList<>(first);
+        records.addAll(second);
+        return records;
+    }
+
+    private static AuditRecord tally(AuditRecord.Kind kind, int version, int totalVotes, int... votes) {
+        return AuditRecord.tally(kind, 1, version, totalVotes, AuditLogTest.parties(votes), null);
+    }
+
+    private static AuditRecord batch(int version, int totalVotes, int... increments) {
+        Map<Integer, Integer> byParty = new LinkedHashMap<>();
+        for (int i = 0; i < increments.length; i++) {
+            byParty.put(i + 1, increments[i]);
+        }
+        return AuditRecord.batch(1, version, totalVotes, byParty, "b" + version, "s");
+    }
+}
@@ -0,0 +1,44 @@
+package cache;
+
+import junit.framework.TestCase;
+import model.District;
+
+public class DistrictCacheTest extends TestCase {
+
+    private final DistrictCache cache = new DistrictCache(10, 60_000L);
+
+    public void testOlderVersionDoesNotReplaceNewer() {
+        cache.put(district(6));
+        cache.put(district(5));
+
+        assertEquals(6, cache.getIfPresent(1).getVersion());
+    }
+
+    public void testOlderVersionIsNotCachedAfterNewerInvalidation() {
+        cache.put(district(4));
+        cache.invalidate(1, 6);
+        cache.put(district(5));
+
+        assertNull(cache.getIfPresent(1));
+
+        cache.put(district(6));
+
+        assertEquals(6, cache.getIfPresent(1).getVersion());
+    }
+
+    public void testOlderLoadIsReturnedButNotCachedAfterInvalidateIfOlder() throws Exception {
+        assertTrue(cache.invalidateIfOlder(1, 3));
+
+        District loaded = cache.get(1, id -> district(2));
+
+        assertEquals(2, loaded.getVersion());
+        assertNull(cache.getIfPresent(1));
+    }
+
+    private static District district(int version) {
+        District district = new District();
+        district.setId(1);
+        district.setVersion(version);
+        return district;
+    }
+}
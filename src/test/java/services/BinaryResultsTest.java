@@ -0,0 +1,309 @@
+package services;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import junit.framework.TestCase;
+import model.District;
+import model.NationalPartyResult;
+import model.NationalResult;
+import model.Party;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class BinaryResultsTest extends TestCase {
+
+    private final Gson gson = new Gson();
+
+    public void testDistrictGoldenBytes() {
+        District district = district(1, 300, "D\u00e9", "BONUS_SEAT");
+        district.addParty(party(2, "\ud83d\uddf3", 90, true, 4, 1));
+
+        byte[] expected = bytes(
+                'V', 'R', 1,
+                1,                              // district
+                1, 0xAC, 0x02, 5, 100, 90, 10, 6, // id, version 300, seats, votes, threshold
+                1,                              // BONUS_SEAT
+                3, 'D', 0xC3, 0xA9,             // "D" then U+00E9 as two bytes
+                1,                              // one party
+                2, 4, 0xF0, 0x9F, 0x97, 0xB3,   // id, name U+1F5F3 as one four-byte sequence
+                90, 1, 4, 0, 1, 5,              // votes, qualified, seats by round, bonus, total
+                0);
+
+        assertEquals(Arrays.toString(expected), Arrays.toString(encode(district)));
+    }
+
+    public void testNationalGoldenBytes() {
+        NationalResult result = new NationalResult();
+        result.setDistrictCount(2);
+        result.setSeats(10);
+        result.setTotalVotes(5_000_000_000L);
+        result.setValidVotes(128);
+        NationalPartyResult standing = new NationalPartyResult("A");
+        standing.setVotes(127);
+        standing.setSeats(7);
+        standing.setBonusSeats(1);
+        standing.setDistricts(2);
+        result.getParties().add(standing);
+
+        byte[] expected = bytes(
+                'V', 'R', 1,
+                2,                                  // national
+                2, 10,
+                0x80, 0xE4, 0x97, 0xD0, 0x12,       // 5,000,000,000 needs more than 32 bits
+                0x80, 0x01,                         // 128 is the first two-byte varint
+                3, 1, 'A', 127, 7, 1, 2,            // standing
+                0);
+
+        byte[] actual;
+        try (BinaryResults body = BinaryResults.begin()) {
+            actual = body.national(result).end().toByteArray();
+        }
+        assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+    }
+
+    public void testStringsEncodeAsUtf8AndUnpairedSurrogatesAsQuestionMarks() {
+        String[] names = {"", "plain", "\u00e9\u00df", "\u20ac\uffff", "\ud83d\uddf3\ud83c\udf89", "a\ud83db", "\udc00z", "end\ud83d"};
+        for (String name : names) {
+            District district = district(1, 1, name, "HARE");
+            Decoded decoded = decodeDistrict(new Reader(encode(district)));
+            // String.getBytes replaces an unpaired surrogate with '?' as well
+            assertEquals(new String(name.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8), decoded.name);
+        }
+    }
+
+    public void testVarintsRoundTrip() {
+        int[] values = {0, 1, 127, 128, 16383, 16384, 2_097_151, 2_097_152, Integer.MAX_VALUE};
+        for (int value : values) {
+            District district = district(value, value, "d", "DHONDT");
+            Reader reader = new Reader(encode(district));
+            Decoded decoded = decodeDistrict(reader);
+            assertEquals(value, decoded.id);
+            assertEquals(value, decoded.version);
+        }
+    }
+
+    public void testDistrictMatchesJson() {
+        District district = district(7, 12, "North \u00c5", "SAINTE_LAGUE");
+        district.addParty(party(1, "A", 600, true, 3, 0));
+        district.addParty(party(2, "B \u2013 C", 300, true, 2, 0));
+        district.addParty(party(3, "D", 20, false, 0, 0));
+        district.setAllocationMethod("CUSTOM");
+
+        Reader reader = new Reader(encode(district));
+        Decoded decoded = decodeDistrict(reader);
+        assertEquals(0, reader.next());
+        assertEquals(reader.bytes.length, reader.pos);
+
+        assertMatches(gson.toJsonTree(district).getAsJsonObject(), decoded);
+    }
+
+    public void testNationalMatchesJson() {
+        List<District> districts = new ArrayList<>();
+        District first = district(1, 3, "One", "BONUS_SEAT");
+        first.addParty(party(1, "A", 700, true, 4, 1));
+        first.addParty(party(2, "B", 300, true, 2, 0));
+        districts.add(first);
+        District second = district(2, 9, "Two", "HARE");
+        second.addParty(party(3, "A", 200, true, 1, 0));
+        districts.add(second);
+
+        NationalResult result = new NationalResult();
+        result.setDistrictCount(2);
+        result.setSeats(first.getSeats() + second.getSeats());
+        result.setTotalVotes(3_000_000_000L);
+        result.setValidVotes(1200);
+        NationalPartyResult a = new NationalPartyResult("A");
+        a.setVotes(900);
+        a.setSeats(6);
+        a.setBonusSeats(1);
+        a.setDistricts(2);
+        NationalPartyResult b = new NationalPartyResult("B");
+        b.setVotes(300);
+        b.setSeats(2);
+        b.setDistricts(1);
+        result.setParties(Arrays.asList(a, b));
+        result.setDistricts(districts);
+
+        byte[] encoded;
+        try (BinaryResults body = BinaryResults.begin()) {
+            encoded = body.national(result).end().toByteArray();
+        }
+        JsonObject json = gson.toJsonTree(result).getAsJsonObject();
+
+        Reader reader = new Reader(encoded);
+        reader.pos = 3;
+        assertEquals(2, reader.next());
+        assertEquals(json.get("districtCount").getAsInt(), reader.readInt());
+        assertEquals(json.get("seats").getAsInt(), reader.readInt());
+        assertEquals(json.get("totalVotes").getAsLong(), reader.readLong());
+        assertEquals(json.get("validVotes").getAsLong(), reader.readLong());
+
+        JsonArray parties = json.getAsJsonArray("parties");
+        for (int i = 0; i < parties.size(); i++) {
+            JsonObject party = parties.get(i).getAsJsonObject();
+            assertEquals(3, reader.next());
+            assertEquals(party.get("name").getAsString(), reader.readString());
+            assertEquals(party.get("votes").getAsLong(), reader.readLong());
+            assertEquals(party.get("seats").getAsInt(), reader.readInt());
+            assertEquals(party.get("bonusSeats").getAsInt(), reader.readInt());
+            assertEquals(party.get("districts").getAsInt(), reader.readInt());
+        }
+        JsonArray jsonDistricts = json.getAsJsonArray("districts");
+        for (int i = 0; i < jsonDistricts.size(); i++) {
+            assertMatches(jsonDistricts.get(i).getAsJsonObject(), decodeDistrict(reader));
+        }
+        assertEquals(0, reader.next());
+        assertEquals(encoded.length, reader.pos);
+    }
+
+    private static void assertMatches(JsonObject json, Decoded decoded) {
+        assertEquals(json.get("id").getAsInt(), decoded.id);
+        assertEquals(json.get("version").getAsInt(), decoded.version);
+        assertEquals(json.get("seats").getAsInt(), decoded.seats);
+        assertEquals(json.get("totalVotes").getAsInt(), decoded.totalVotes);
+        assertEquals(json.get("validVotes").getAsInt(), decoded.validVotes);
+        assertEquals(json.get("disqualifiedVotes").getAsInt(), decoded.disqualifiedVotes);
+        assertEquals(json.get("voteThreshold").getAsInt(), decoded.voteThreshold);
+        assertEquals(json.get("allocationMethod").getAsString(), decoded.method);
+        assertEquals(json.get("name").getAsString(), decoded.name);
+        JsonArray parties = json.getAsJsonArray("parties");
+        assertEquals(parties.size(), decoded.parties.size());
+        for (int i = 0; i < parties.size(); i++) {
+            JsonObject party = parties.get(i).getAsJsonObject();
+            int[] fields = decoded.parties.get(i);
+            assertEquals(party.get("id").getAsInt(), fields[0]);
+            assertEquals(party.get("name").getAsString(), decoded.partyNames.get(i));
+            assertEquals(party.get("votes").getAsInt(), fields[1]);
+            assertEquals(party.get("qualified").getAsBoolean(), fields[2] == 1);
+            assertEquals(party.get("firstRoundSeats").getAsInt(), fields[3]);
+            assertEquals(party.get("secondRoundSeats").getAsInt(), fields[4]);
+            assertEquals(party.get("bonusSeat").getAsInt(), fields[5]);
+            assertEquals(party.get("totalSeats").getAsInt(), fields[6]);
+        }
+    }
+
+    // Reads one district record; a body's header is skipped if the reader is still at the start
+    private static Decoded decodeDistrict(Reader reader) {
+        if (reader.pos == 0) {
+            assertEquals('V', reader.next());
+            assertEquals('R', reader.next());
+            assertEquals(BinaryResults.FORMAT_VERSION, reader.next());
+        }
+        assertEquals(1, reader.next());
+        Decoded decoded = new Decoded();
+        decoded.id = reader.readInt();
+        decoded.version = reader.readInt();
+        decoded.seats = reader.readInt();
+        decoded.totalVotes = reader.readInt();
+        decoded.validVotes = reader.readInt();
+        decoded.disqualifiedVotes = reader.readInt();
+        decoded.voteThreshold = reader.readInt();
+        int method = reader.readInt();
+        decoded.method = method == 0 ? reader.readString()
+                : new String[] {null, "BONUS_SEAT", "DHONDT", "SAINTE_LAGUE", "HARE"}[method];
+        decoded.name = reader.readString();
+        int partyCount = reader.readInt();
+        for (int i = 0; i < partyCount; i++) {
+            int id = reader.readInt();
+            decoded.partyNames.add(reader.readString());
+            decoded.parties.add(new int[] {id, reader.readInt(), reader.readInt(), reader.readInt(), reader.readInt(),
+                    reader.readInt(), reader.readInt()});
+        }
+        return decoded;
+    }
+
+    private static byte[] encode(District district) {
+        try (BinaryResults body = BinaryResults.begin()) {
+            return body.district(district).end().toByteArray();
+        }
+    }
+
+    private static District district(int id, int version, String name, String method) {
+        District district = new District();
+        district.setId(id);
+        district.setVersion(version);
+        district.setName(name);
+        district.setSeats(5);
+        district.setTotalVotes(100);
+        district.setValidVotes(90);
+        district.setDisqualifiedVotes(10);
+        district.setVoteThreshold(6);
+        district.setAllocationMethod(method);
+        return district;
+    }
+
+    private static Party party(int id, String name, int votes, boolean qualified, int firstRoundSeats, int bonusSeat) {
+        Party party = new Party();
+        party.setId(id);
+        party.setName(name);
+        party.setVotes(votes);
+        party.setQualified(qualified);
+        party.setFirstRoundSeats(firstRoundSeats);
+        party.setBonusSeat(bonusSeat);
+        party.setTotalSeats(firstRoundSeats + bonusSeat);
+        return party;
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static final class Decoded {
+        int id;
+        int version;
+        int seats;
+        int totalVotes;
+        int validVotes;
+        int disqualifiedVotes;
+        int voteThreshold;
+        String method;
+        String name;
+        final List<String> partyNames = new ArrayList<>();
+        // id, votes, qualified, firstRoundSeats, secondRoundSeats, bonusSeat, totalSeats
+        final List<int[]> parties = new ArrayList<>();
+    }
+
+    // The decoding a consumer of the format would do
+    private static final class Reader {
+        final byte[] bytes;
+        int pos;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int next() {
+            return bytes[pos++] & 0xFF;
+        }
+
+        int readInt() {
+            return (int) readLong();
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = next();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        String readString() {
+            int length = readInt();
+            String value = new String(bytes, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package services;
+
+import audit.AuditRecord;
+import junit.framework.TestCase;
+import model.District;
+import model.Party;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class TallyQueueTest extends TestCase {
+
+    public void testOverlayKeepsPartiesTheSubmissionDoesNotName() {
+        District district = district(4, 100, 40, 60, 0);
+
+        TallyQueue.overlay(district, new TallyQueue.Submission("t1", 7, 120, votes(2, 70, 3, 10)));
+
+        assertEquals(120, district.getTotalVotes());
+        assertEquals(40, district.getParties().get(0).getVotes());
+        assertEquals(70, district.getParties().get(1).getVotes());
+        assertEquals(10, district.getParties().get(2).getVotes());
+    }
+
+    public void testCoalescedSubmissionsAreEachRecordedWithTheirOwnCounts() {
+        District district = district(4, 0, 0, 0, 0);
+
+        AuditRecord first = TallyQueue.overlay(district, new TallyQueue.Submission("a", 7, 10, votes(1, 4)));
+        AuditRecord second = TallyQueue.overlay(district, new TallyQueue.Submission("b", 7, 20, votes(2, 9)));
+        AuditRecord third = TallyQueue.overlay(district, new TallyQueue.Submission("c", 7, 30, votes(1, 5)));
+
+        assertRecord(first, "a", 10, 4, 0, 0);
+        assertRecord(second, "b", 20, 4, 9, 0);
+        assertRecord(third, "c", 30, 5, 9, 0);
+    }
+
+    private static void assertRecord(AuditRecord record, String ticket, int totalVotes, int... votes) {
+        assertEquals(AuditRecord.Kind.ASYNC_TALLY, record.getKind());
+        assertEquals(ticket, record.getReference());
+        assertEquals(7, record.getDistrictId());
+        // The version the district is written at
+        assertEquals(5, record.getVersion());
+        assertEquals(totalVotes, record.getTotalVotes());
+        assertEquals(votes.length, record.getPartyCount());
+        for (int i = 0; i < votes.length; i++) {
+            assertEquals(i + 1, record.getPartyId(i));
+            assertEquals(votes[i], record.getVotes(i));
+        }
+    }
+
+    private static District district(int version, int totalVotes, int... votes) {
+        District district = new District();
+        district.setId(7);
+        district.setVersion(version);
+        district.setTotalVotes(totalVotes);
+        for (int i = 0; i < votes.length; i++) {
+            Party party = new Party();
+            party.setId(i + 1);
+            party.setName("P" + (i + 1));
+            party.setVotes(votes[i]);
+            district.addParty(party);
+        }
+        return district;
+    }
+
+    private static Map<Integer, Integer> votes(int... pairs) {
+        Map<Integer, Integer> votes = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            votes.put(pairs[i], pairs[i + 1]);
+        }
+        return votes;
+    }
+}
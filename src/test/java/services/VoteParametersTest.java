@@ -0,0 +1,83 @@
+package services;
+
+import junit.framework.TestCase;
+import model.District;
+import model.Party;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class VoteParametersTest extends TestCase {
+
+    private static final Set<String> IGNORED = Collections.singleton("districtId");
+
+    public void testVotesAreMappedByPartyIdInIdOrder() {
+        Map<Integer, Integer> votes = VoteParameters.parsePartyVotes(
+                parameters("districtId", "7", "B", "20", " A ", "10"), district(), IGNORED);
+
+        assertEquals("{1=10, 2=20}", votes.toString());
+    }
+
+    public void testPartyGivenTwiceIsRefused() {
+        try {
+            VoteParameters.parsePartyVotes(parameters("A", "10", " A", "5"), district(), IGNORED);
+            fail("Expected the second count for A to be refused");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Votes for A are given more than once", e.getMessage());
+        }
+    }
+
+    public void testApplyLeavesUnnamedPartiesAndRefusesDuplicatesWithoutChanges() {
+        District district = district();
+        VoteParameters.applyPartyVotes(parameters("B", "30"), district, IGNORED);
+
+        assertEquals(3, district.getParties().get(0).getVotes());
+        assertEquals(30, district.getParties().get(1).getVotes());
+
+        try {
+            VoteParameters.applyPartyVotes(parameters("A", "1", "A ", "2"), district, IGNORED);
+            fail("Expected the second count for A to be refused");
+        } catch (IllegalArgumentException e) {
+            assertEquals(3, district.getParties().get(0).getVotes());
+        }
+    }
+
+    public void testNegativeVotesAndUnknownPartiesAreRefused() {
+        try {
+            VoteParameters.parsePartyVotes(parameters("A", "-1"), district(), IGNORED);
+            fail("Expected negative votes to be refused");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Votes for A cannot be negative", e.getMessage());
+        }
+        try {
+            VoteParameters.parsePartyVotes(parameters("C", "1"), district(), IGNORED);
+            fail("Expected an unknown party to be refused");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Party C not found in district", e.getMessage());
+        }
+    }
+
+    private static Map<String, String[]> parameters(String... pairs) {
+        Map<String, String[]> parameters = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            parameters.put(pairs[i], new String[] {pairs[i + 1]});
+        }
+        return parameters;
+    }
+
+    private static District district() {
+        District district = new District();
+        district.setId(7);
+        String[] names = {"A", "B"};
+        for (int i = 0; i < names.length; i++) {
+            Party party = new Party();
+            party.setId(i + 1);
+            party.setName(names[i]);
+            party.setVotes(3);
+            district.addParty(party);
+        }
+        return district;
+    }
+}